@@ -39,7 +39,7 @@ public class IntArray {
         this.headerAllocation = headerAllocation;
         arrayScope = ResourceScope.newSharedScope();
         headerSizeAccessor = Accessor.of(headerLayout, PathElement.groupElement("size"));
-        long size = (long)headerSizeAccessor.get(headerAllocation);
+        long size = headerSizeAccessor.getLong(headerAllocation);
         arrayLayout = MemoryLayout.sequenceLayout(size, ValueLayout.JAVA_INT);
         headerElementsSegmentAccessor = Accessor.of(headerLayout, PathElement.groupElement("elementsSegment"));
         AllocationAddress arrayAllocationAddress = headerElementsSegmentAccessor.getReference(headerAllocation);
@@ -83,11 +83,11 @@ public class IntArray {
         if (index < 0 || index >= size()) {
             throw new ArrayIndexOutOfBoundsException();
         }
-        return (int)elementsAccessor.get(arrayAllocation, index);
+        return elementsAccessor.getInt(arrayAllocation, index);
     }
 
     public long size() {
-        return (long)headerSizeAccessor.get(headerAllocation);
+        return headerSizeAccessor.getLong(headerAllocation);
     }
 
     public Allocation getAllocation() {
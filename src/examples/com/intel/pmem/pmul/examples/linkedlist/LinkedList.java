@@ -11,6 +11,7 @@ import com.intel.pmem.pmul.Accessor;
 import com.intel.pmem.pmul.Allocation;
 import com.intel.pmem.pmul.AllocationAddress;
 import com.intel.pmem.pmul.Heap;
+import java.util.Arrays;
 import java.util.Iterator;
 import jdk.incubator.foreign.MemoryAddress;
 import jdk.incubator.foreign.MemoryLayout.PathElement;
@@ -109,6 +110,21 @@ public class LinkedList implements Iterable<Integer> {
         head = root.getNext();
 	}
 
+	// inserts values in order, as if by calling insert for each value
+	public void insertAll(int... values) {
+		long[] sizes = new long[values.length];
+		Arrays.fill(sizes, Node.layout.byteSize());
+		Accessor.execute(heap, () -> {
+			Allocation[] allocations = heap.allocateAll(sizes, scope);
+			Node next = head;
+			for (int i = 0; i < values.length; i++) {
+				next = Node.of(heap, allocations[i], values[i], next);
+			}
+			root.setNext(next);
+		});
+        head = root.getNext();
+	}
+
 	public int deleteHead() {
 		int value = Accessor.execute(heap, () -> {
 			Node oldHead = head;
@@ -156,6 +172,15 @@ public class LinkedList implements Iterable<Integer> {
 			});
 		}
 
+		public static Node of(Heap heap, Allocation allocation, int payload, Node next) {
+			Node node = new Node(heap, allocation);
+			allocation.execute(() -> {
+				node.setPayload(payload);
+				node.setNext(next);
+			});
+			return node;
+		}
+
 		private Node(Heap heap, Allocation allocation) {
 			this.heap = heap;
 			this.allocation = allocation;
@@ -170,7 +195,7 @@ public class LinkedList implements Iterable<Integer> {
 		}
 
 		public int getPayload() {
-			return (int)PAYLOAD.get(getAllocation());
+			return PAYLOAD.getInt(getAllocation());
 		}
 
 		public void setNext(Node next) {
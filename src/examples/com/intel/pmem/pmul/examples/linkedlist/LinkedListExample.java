@@ -40,9 +40,9 @@ public class LinkedListExample {
 				list1 = Accessor.execute(heap, () -> {
 					LinkedList list = LinkedList.create(heap);
 					heap.setRoot(list.getAllocation());
-					for (int i = 1; i <= N; i++) {
-						list.insert(i);
-					}
+					int[] values = new int[N];
+					Arrays.setAll(values, (i) -> i + 1);
+					list.insertAll(values);
 					return list;
 				});
 				if (N <= 10) message("wrote list %s", list1);
@@ -31,3 +31,180 @@ JNIEXPORT jlong JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeModeFlag(J
 {
     return (jlong)(S_IRUSR | S_IWUSR);
 }
+
+JNIEXPORT jlong JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeActionSize(JNIEnv *env, jobject obj)
+{
+    return (jlong)sizeof(struct pobj_action);
+}
+
+JNIEXPORT jlong JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeReserveZeroFlag(JNIEnv *env, jobject obj)
+{
+    return (jlong)POBJ_XRESERVE_ZERO;
+}
+
+JNIEXPORT jlong JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeAllocZeroFlag(JNIEnv *env, jobject obj)
+{
+    return (jlong)POBJ_XALLOC_ZERO;
+}
+
+JNIEXPORT jlong JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeClassIdFlag(JNIEnv *env, jobject obj, jint classId)
+{
+    return (jlong)POBJ_CLASS_ID(classId);
+}
+
+/*
+ * Registers a header-less allocation class whose single-unit allocations are exactly unitSize bytes.
+ * Returns the class id assigned by pmemobj, or -1 on failure.
+ */
+JNIEXPORT jint JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeRegisterAllocationClass0(JNIEnv *env, jobject obj, jlong poolAddress, jlong unitSize, jint unitsPerBlock)
+{
+    PMEMobjpool *pool = (PMEMobjpool*)poolAddress;
+    struct pobj_alloc_class_desc desc;
+    desc.unit_size = (size_t)unitSize;
+    desc.alignment = 0;
+    desc.units_per_block = (unsigned)unitsPerBlock;
+    desc.header_type = POBJ_HEADER_NONE;
+    desc.class_id = 0;
+    if (pmemobj_ctl_set(pool, "heap.alloc_class.new.desc", &desc) != 0) return -1;
+    return (jint)desc.class_id;
+}
+
+/*
+ * Creates a new arena that is only used by threads explicitly assigned to it.
+ * Returns the arena id, or -1 on failure.
+ */
+JNIEXPORT jint JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeCreateArena0(JNIEnv *env, jobject obj, jlong poolAddress)
+{
+    PMEMobjpool *pool = (PMEMobjpool*)poolAddress;
+    unsigned arenaId = 0;
+    if (pmemobj_ctl_exec(pool, "heap.arena.create", &arenaId) != 0) return -1;
+    return (jint)arenaId;
+}
+
+JNIEXPORT jint JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeSetThreadArena0(JNIEnv *env, jobject obj, jlong poolAddress, jint arenaId)
+{
+    PMEMobjpool *pool = (PMEMobjpool*)poolAddress;
+    unsigned id = (unsigned)arenaId;
+    return pmemobj_ctl_set(pool, "heap.thread.arena_id", &id);
+}
+
+JNIEXPORT jint JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeGetThreadArena0(JNIEnv *env, jobject obj, jlong poolAddress)
+{
+    PMEMobjpool *pool = (PMEMobjpool*)poolAddress;
+    unsigned arenaId = 0;
+    if (pmemobj_ctl_get(pool, "heap.thread.arena_id", &arenaId) != 0) return -1;
+    return (jint)arenaId;
+}
+
+/*
+ * Returns the number of bytes currently granted to the heap, or -1 on failure.
+ */
+JNIEXPORT jlong JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeHeapSizeGranted0(JNIEnv *env, jobject obj, jlong poolAddress)
+{
+    PMEMobjpool *pool = (PMEMobjpool*)poolAddress;
+    uint64_t granted = 0;
+    if (pmemobj_ctl_get(pool, "heap.size.granted", &granted) != 0) return -1;
+    return (jlong)granted;
+}
+
+/*
+ * Adds one set-value action per element of addresses to the calling thread's current 
+ * transaction. The values are written to the redo log and applied when the transaction 
+ * commits. The transaction is aborted if the actions cannot be published. Returns -1 if
+ * the actions cannot be allocated or, with an OutOfMemoryError pending, if the arrays cannot
+ * be accessed.
+ */
+JNIEXPORT jint JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeTxPublishValues0(JNIEnv *env, jobject obj, jlong poolAddress, jlongArray addresses, jlongArray values)
+{
+    PMEMobjpool *pool = (PMEMobjpool *)poolAddress;
+    jsize count = env->GetArrayLength(addresses);
+    struct pobj_action *actions = (struct pobj_action *)malloc(count * sizeof(struct pobj_action));
+    if (actions == NULL) return -1;
+    jlong *addressElements = env->GetLongArrayElements(addresses, NULL);
+    if (addressElements == NULL) {
+        free(actions);
+        return -1;
+    }
+    jlong *valueElements = env->GetLongArrayElements(values, NULL);
+    if (valueElements == NULL) {
+        env->ReleaseLongArrayElements(addresses, addressElements, JNI_ABORT);
+        free(actions);
+        return -1;
+    }
+
+    for (jsize i = 0; i < count; i++) {
+        pmemobj_set_value(pool, &actions[i], (uint64_t *)addressElements[i], (uint64_t)valueElements[i]);
+    }
+    jint ret = pmemobj_tx_publish(actions, count);
+
+    env->ReleaseLongArrayElements(addresses, addressElements, JNI_ABORT);
+    env->ReleaseLongArrayElements(values, valueElements, JNI_ABORT);
+    free(actions);
+    return ret;
+}
+
+/*
+ * Allocates one object per element of sizes and stores the object offsets in offsets. Each
+ * allocation is made with the allocation class flag at the same index of classFlags, or 0
+ * for the default classes. Transactional allocations are made in the calling thread's current transaction, which 
+ * is aborted if any allocation fails. Non-transactional allocations are reserved and then 
+ * published together, so that either all of them or none of them are made. Returns -1, with
+ * an OutOfMemoryError pending, if the arrays cannot be accessed.
+ */
+JNIEXPORT jint JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeAllocateAll0(JNIEnv *env, jobject obj, jlong poolAddress, jlongArray sizes, jlongArray classFlags, jlongArray offsets, jlong typeNum, jboolean transactional)
+{
+    PMEMobjpool *pool = (PMEMobjpool *)poolAddress;
+    jsize count = env->GetArrayLength(sizes);
+    jlong *sizeElements = env->GetLongArrayElements(sizes, NULL);
+    if (sizeElements == NULL) return -1;
+    jlong *flagElements = env->GetLongArrayElements(classFlags, NULL);
+    if (flagElements == NULL) {
+        env->ReleaseLongArrayElements(sizes, sizeElements, JNI_ABORT);
+        return -1;
+    }
+    jlong *offsetElements = env->GetLongArrayElements(offsets, NULL);
+    if (offsetElements == NULL) {
+        env->ReleaseLongArrayElements(classFlags, flagElements, JNI_ABORT);
+        env->ReleaseLongArrayElements(sizes, sizeElements, JNI_ABORT);
+        return -1;
+    }
+    jint ret = 0;
+
+    if (transactional) {
+        for (jsize i = 0; i < count; i++) {
+            PMEMoid oid = pmemobj_tx_xalloc((size_t)sizeElements[i], (uint64_t)typeNum, POBJ_XALLOC_ZERO | (uint64_t)flagElements[i]);
+            if (OID_IS_NULL(oid)) {
+                ret = -1;
+                break;
+            }
+            offsetElements[i] = (jlong)oid.off;
+        }
+    }
+    else {
+        struct pobj_action *actions = (struct pobj_action *)malloc(count * sizeof(struct pobj_action));
+        if (actions == NULL) {
+            ret = -1;
+        }
+        else {
+            jsize reserved = 0;
+            for (; reserved < count; reserved++) {
+                PMEMoid oid = pmemobj_xreserve(pool, &actions[reserved], (size_t)sizeElements[reserved], (uint64_t)typeNum, POBJ_XRESERVE_ZERO | (uint64_t)flagElements[reserved]);
+                if (OID_IS_NULL(oid)) break;
+                offsetElements[reserved] = (jlong)oid.off;
+            }
+            if (reserved < count) {
+                if (reserved > 0) pmemobj_cancel(pool, actions, reserved);
+                ret = -1;
+            }
+            else if (pmemobj_publish(pool, actions, count) != 0) {
+                ret = -1;
+            }
+            free(actions);
+        }
+    }
+
+    env->ReleaseLongArrayElements(sizes, sizeElements, JNI_ABORT);
+    env->ReleaseLongArrayElements(classFlags, flagElements, JNI_ABORT);
+    env->ReleaseLongArrayElements(offsets, offsetElements, ret == 0 ? 0 : JNI_ABORT);
+    return ret;
+}
@@ -16,6 +16,17 @@ extern "C" {
 JNIEXPORT jlong JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeMinHeapSize0(JNIEnv *env, jobject obj);
 JNIEXPORT jint JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeRemovePoolFlag(JNIEnv *env, jobject obj);
 JNIEXPORT jlong JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeModeFlag(JNIEnv *env, jobject obj);
+JNIEXPORT jlong JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeActionSize(JNIEnv *env, jobject obj);
+JNIEXPORT jlong JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeReserveZeroFlag(JNIEnv *env, jobject obj);
+JNIEXPORT jlong JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeAllocZeroFlag(JNIEnv *env, jobject obj);
+JNIEXPORT jlong JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeClassIdFlag(JNIEnv *env, jobject obj, jint classId);
+JNIEXPORT jint JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeRegisterAllocationClass0(JNIEnv *env, jobject obj, jlong poolAddress, jlong unitSize, jint unitsPerBlock);
+JNIEXPORT jint JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeCreateArena0(JNIEnv *env, jobject obj, jlong poolAddress);
+JNIEXPORT jint JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeSetThreadArena0(JNIEnv *env, jobject obj, jlong poolAddress, jint arenaId);
+JNIEXPORT jint JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeGetThreadArena0(JNIEnv *env, jobject obj, jlong poolAddress);
+JNIEXPORT jlong JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeHeapSizeGranted0(JNIEnv *env, jobject obj, jlong poolAddress);
+JNIEXPORT jint JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeTxPublishValues0(JNIEnv *env, jobject obj, jlong poolAddress, jlongArray addresses, jlongArray values);
+JNIEXPORT jint JNICALL Java_com_intel_pmem_pmul_PersistentHeap_nativeAllocateAll0(JNIEnv *env, jobject obj, jlong poolAddress, jlongArray sizes, jlongArray classFlags, jlongArray offsets, jlong typeNum, jboolean transactional);
 
 #ifdef __cplusplus
 }
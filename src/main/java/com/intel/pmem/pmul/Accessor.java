@@ -8,6 +8,7 @@
 package com.intel.pmem.pmul;
 
 import java.lang.invoke.WrongMethodTypeException;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 import jdk.incubator.foreign.MemoryAddress;
 import jdk.incubator.foreign.MemoryLayout.PathElement;
@@ -16,7 +17,8 @@ import jdk.incubator.foreign.MemorySegment;
 
 /**
  * An accessor for a Heap-resident element of a {@code java.foreign.MemoryLayout}.
- * Accessor methods (currently set, get) behave like memory access var handle plain read and write methods.
+ * Accessor methods (set, get) behave like memory access var handle plain read and write methods; compareAndSet, 
+ * getAndSet and getAndAdd behave like the corresponding atomic access modes.
  * Accessor methods offer context-sensitive execution, where the write semantics are customized according to the specified heap.
  */
 
@@ -52,6 +54,58 @@ public interface Accessor {
         return ((HighLevelHeap)heap).execute(body);
     }        
 
+    /**
+     * Executes the supplied body as a batch of writes. On a heap of {@code Kind} DURABLE, writes made by the body are 
+     * not persisted one at a time as they are within {@code execute}; the cache lines they dirty are flushed once each 
+     * and fenced once when the outermost batch on the calling thread returns, or throws. Until then none of the writes 
+     * is guaranteed to be persistent, and they may become persistent in any order. A durable heap cannot be closed while 
+     * a thread other than the closing one is within a batch on it. On heaps of other kinds the body is 
+     * executed as by {@link #execute(Heap, Runnable)}.
+     * @param heap the heap in which the access will take place
+     * @param body the code containing access operations
+     */
+    public static void batch(Heap heap, Runnable body) {
+        ((HighLevelHeap)heap).batch(body);
+    }
+
+    /**
+     * Executes the supplied body as a batch of writes. See {@link #batch(Heap, Runnable)}.
+     * @param heap the heap in which the access will take place
+     * @param body the code containing access operations
+     * @param <T> the return type of the supplier
+     * @return the result of the body execution
+     */
+    public static <T> T batch(Heap heap, Supplier<T> body) {
+        return ((HighLevelHeap)heap).batch(body);
+    }
+
+    /**
+     * Submits the supplied body for execution using the data consistency behavior of the supplied heap. On a heap 
+     * of {@code Kind} TRANSACTIONAL or BUFFERED, bodies submitted from any thread are executed in batches on a 
+     * committer thread, with one transaction per batch, and the returned future completes once the batch containing 
+     * the body has committed. If a body throws, only its own future completes exceptionally and the rest of its 
+     * batch is executed again, so bodies should only modify heap memory. On heaps of other kinds the body is 
+     * executed immediately.
+     * @param heap the heap in which the access will take place
+     * @param body the code containing access operations
+     * @return a future that completes when the body's writes are durable
+     */
+    public static CompletableFuture<Void> executeAsync(Heap heap, Runnable body) {
+        return ((HighLevelHeap)heap).executeAsync(() -> {body.run(); return (Void)null;});
+    }
+
+    /**
+     * Submits the supplied body for execution using the data consistency behavior of the supplied heap. See 
+     * {@link #executeAsync(Heap, Runnable)}.
+     * @param heap the heap in which the access will take place
+     * @param body the code containing access operations
+     * @param <T> the return type of the supplier
+     * @return a future that completes with the result of the body execution when its writes are durable
+     */
+    public static <T> CompletableFuture<T> executeAsync(Heap heap, Supplier<T> body) {
+        return ((HighLevelHeap)heap).executeAsync(body);
+    }
+
     /**
      * Stores the supplied byte value at the target layout within the supplied allocation.  
      * @param allocation the allocation whose memory is to be dereferenced
@@ -328,6 +382,613 @@ public interface Accessor {
      */
     public void setReference(Allocation allocation, long index1, long index2, AllocationAddress value);
 
+    /**
+     * Stores the supplied byte values at consecutive indices of the target sequence element within the supplied 
+     * allocation, starting at {@code fromIndex}. The range is written with a single flush or snapshot.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param fromIndex the access coordinate of the first element to store
+     * @param values the values to store
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use, the accessor does not 
+	 * have exactly one access coordinate, or its carrier is not byte
+	 * @throws IndexOutOfBoundsException if the range extends beyond the target sequence
+     */
+    public void setRange(Allocation allocation, long fromIndex, byte[] values);
+
+    /**
+     * Retrieves byte values from consecutive indices of the target sequence element within the supplied 
+     * allocation, starting at {@code fromIndex}, into the supplied array.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param fromIndex the access coordinate of the first element to retrieve
+     * @param values the array to fill
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use, the accessor does not 
+	 * have exactly one access coordinate, or its carrier is not byte
+	 * @throws IndexOutOfBoundsException if the range extends beyond the target sequence
+     */
+    public void getRange(Allocation allocation, long fromIndex, byte[] values);
+
+    /**
+     * Stores the supplied short values at consecutive indices of the target sequence element within the supplied 
+     * allocation, starting at {@code fromIndex}. The range is written with a single flush or snapshot.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param fromIndex the access coordinate of the first element to store
+     * @param values the values to store
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use, the accessor does not 
+	 * have exactly one access coordinate, or its carrier is not short
+	 * @throws IndexOutOfBoundsException if the range extends beyond the target sequence
+     */
+    public void setRange(Allocation allocation, long fromIndex, short[] values);
+
+    /**
+     * Retrieves short values from consecutive indices of the target sequence element within the supplied 
+     * allocation, starting at {@code fromIndex}, into the supplied array.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param fromIndex the access coordinate of the first element to retrieve
+     * @param values the array to fill
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use, the accessor does not 
+	 * have exactly one access coordinate, or its carrier is not short
+	 * @throws IndexOutOfBoundsException if the range extends beyond the target sequence
+     */
+    public void getRange(Allocation allocation, long fromIndex, short[] values);
+
+    /**
+     * Stores the supplied char values at consecutive indices of the target sequence element within the supplied 
+     * allocation, starting at {@code fromIndex}. The range is written with a single flush or snapshot.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param fromIndex the access coordinate of the first element to store
+     * @param values the values to store
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use, the accessor does not 
+	 * have exactly one access coordinate, or its carrier is not char
+	 * @throws IndexOutOfBoundsException if the range extends beyond the target sequence
+     */
+    public void setRange(Allocation allocation, long fromIndex, char[] values);
+
+    /**
+     * Retrieves char values from consecutive indices of the target sequence element within the supplied 
+     * allocation, starting at {@code fromIndex}, into the supplied array.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param fromIndex the access coordinate of the first element to retrieve
+     * @param values the array to fill
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use, the accessor does not 
+	 * have exactly one access coordinate, or its carrier is not char
+	 * @throws IndexOutOfBoundsException if the range extends beyond the target sequence
+     */
+    public void getRange(Allocation allocation, long fromIndex, char[] values);
+
+    /**
+     * Stores the supplied int values at consecutive indices of the target sequence element within the supplied 
+     * allocation, starting at {@code fromIndex}. The range is written with a single flush or snapshot.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param fromIndex the access coordinate of the first element to store
+     * @param values the values to store
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use, the accessor does not 
+	 * have exactly one access coordinate, or its carrier is not int
+	 * @throws IndexOutOfBoundsException if the range extends beyond the target sequence
+     */
+    public void setRange(Allocation allocation, long fromIndex, int[] values);
+
+    /**
+     * Retrieves int values from consecutive indices of the target sequence element within the supplied 
+     * allocation, starting at {@code fromIndex}, into the supplied array.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param fromIndex the access coordinate of the first element to retrieve
+     * @param values the array to fill
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use, the accessor does not 
+	 * have exactly one access coordinate, or its carrier is not int
+	 * @throws IndexOutOfBoundsException if the range extends beyond the target sequence
+     */
+    public void getRange(Allocation allocation, long fromIndex, int[] values);
+
+    /**
+     * Stores the supplied long values at consecutive indices of the target sequence element within the supplied 
+     * allocation, starting at {@code fromIndex}. The range is written with a single flush or snapshot.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param fromIndex the access coordinate of the first element to store
+     * @param values the values to store
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use, the accessor does not 
+	 * have exactly one access coordinate, or its carrier is not long
+	 * @throws IndexOutOfBoundsException if the range extends beyond the target sequence
+     */
+    public void setRange(Allocation allocation, long fromIndex, long[] values);
+
+    /**
+     * Retrieves long values from consecutive indices of the target sequence element within the supplied 
+     * allocation, starting at {@code fromIndex}, into the supplied array.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param fromIndex the access coordinate of the first element to retrieve
+     * @param values the array to fill
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use, the accessor does not 
+	 * have exactly one access coordinate, or its carrier is not long
+	 * @throws IndexOutOfBoundsException if the range extends beyond the target sequence
+     */
+    public void getRange(Allocation allocation, long fromIndex, long[] values);
+
+    /**
+     * Stores the supplied float values at consecutive indices of the target sequence element within the supplied 
+     * allocation, starting at {@code fromIndex}. The range is written with a single flush or snapshot.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param fromIndex the access coordinate of the first element to store
+     * @param values the values to store
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use, the accessor does not 
+	 * have exactly one access coordinate, or its carrier is not float
+	 * @throws IndexOutOfBoundsException if the range extends beyond the target sequence
+     */
+    public void setRange(Allocation allocation, long fromIndex, float[] values);
+
+    /**
+     * Retrieves float values from consecutive indices of the target sequence element within the supplied 
+     * allocation, starting at {@code fromIndex}, into the supplied array.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param fromIndex the access coordinate of the first element to retrieve
+     * @param values the array to fill
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use, the accessor does not 
+	 * have exactly one access coordinate, or its carrier is not float
+	 * @throws IndexOutOfBoundsException if the range extends beyond the target sequence
+     */
+    public void getRange(Allocation allocation, long fromIndex, float[] values);
+
+    /**
+     * Stores the supplied double values at consecutive indices of the target sequence element within the supplied 
+     * allocation, starting at {@code fromIndex}. The range is written with a single flush or snapshot.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param fromIndex the access coordinate of the first element to store
+     * @param values the values to store
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use, the accessor does not 
+	 * have exactly one access coordinate, or its carrier is not double
+	 * @throws IndexOutOfBoundsException if the range extends beyond the target sequence
+     */
+    public void setRange(Allocation allocation, long fromIndex, double[] values);
+
+    /**
+     * Retrieves double values from consecutive indices of the target sequence element within the supplied 
+     * allocation, starting at {@code fromIndex}, into the supplied array.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param fromIndex the access coordinate of the first element to retrieve
+     * @param values the array to fill
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use, the accessor does not 
+	 * have exactly one access coordinate, or its carrier is not double
+	 * @throws IndexOutOfBoundsException if the range extends beyond the target sequence
+     */
+    public void getRange(Allocation allocation, long fromIndex, double[] values);
+
+    /**
+     * Stores the elements held contiguously in the supplied segment at consecutive indices of the target sequence 
+     * element within the supplied allocation, starting at {@code fromIndex}. Elements are copied as raw bytes, the 
+     * segment's size must be a multiple of the element size. The range is written with a single flush or snapshot.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param fromIndex the access coordinate of the first element to store
+     * @param source the segment holding the elements to store
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the accessor does not 
+	 * have exactly one access coordinate
+	 * @throws IndexOutOfBoundsException if the range extends beyond the target sequence
+	 * @throws IllegalArgumentException if the size of the segment is not a multiple of the element size
+     */
+    public void setRange(Allocation allocation, long fromIndex, MemorySegment source);
+
+    /**
+     * Retrieves elements from consecutive indices of the target sequence element within the supplied allocation, 
+     * starting at {@code fromIndex}, into the supplied segment, where they are stored contiguously as raw bytes. 
+     * The segment's size must be a multiple of the element size.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param fromIndex the access coordinate of the first element to retrieve
+     * @param destination the segment to fill
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the accessor does not 
+	 * have exactly one access coordinate
+	 * @throws IndexOutOfBoundsException if the range extends beyond the target sequence
+	 * @throws IllegalArgumentException if the size of the segment is not a multiple of the element size
+     */
+    public void getRange(Allocation allocation, long fromIndex, MemorySegment destination);
+
+    /**
+     * Atomically stores the supplied int value at the target layout within the supplied allocation if the current 
+     * int value is {@code expected}. See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param expected the expected current value
+     * @param value the value to store
+     * @return true if the value was stored
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public boolean compareAndSet(Allocation allocation, int expected, int value);
+
+    /**
+     * Atomically stores the supplied int value at the target layout within the supplied allocation if the current 
+     * int value is {@code expected}. See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @param expected the expected current value
+     * @param value the value to store
+     * @return true if the value was stored
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public boolean compareAndSet(Allocation allocation, long index, int expected, int value);
+
+    /**
+     * Atomically stores the supplied int value at the target layout within the supplied allocation if the current 
+     * int value is {@code expected}. See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @param expected the expected current value
+     * @param value the value to store
+     * @return true if the value was stored
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public boolean compareAndSet(Allocation allocation, long index1, long index2, int expected, int value);
+
+    /**
+     * Atomically stores the supplied int value at the target layout within the supplied allocation. Atomic operations 
+     * act on the element in place. On a heap of {@code Kind} DURABLE the element is flushed after the operation, 
+     * on a VOLATILE heap it is not flushed. On TRANSACTIONAL and BUFFERED heaps the element is also flushed after the 
+     * operation, which is not undo logged. There, atomic operations are valid only outside of a transaction, or on an 
+     * allocation made within the current transaction.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param value the value to store
+     * @return the previous value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public int getAndSet(Allocation allocation, int value);
+
+    /**
+     * Atomically stores the supplied int value at the target layout within the supplied allocation. Atomic operations 
+     * act on the element in place. On a heap of {@code Kind} DURABLE the element is flushed after the operation, 
+     * on a VOLATILE heap it is not flushed. On TRANSACTIONAL and BUFFERED heaps the element is also flushed after the 
+     * operation, which is not undo logged. There, atomic operations are valid only outside of a transaction, or on an 
+     * allocation made within the current transaction.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @param value the value to store
+     * @return the previous value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public int getAndSet(Allocation allocation, long index, int value);
+
+    /**
+     * Atomically stores the supplied int value at the target layout within the supplied allocation. Atomic operations 
+     * act on the element in place. On a heap of {@code Kind} DURABLE the element is flushed after the operation, 
+     * on a VOLATILE heap it is not flushed. On TRANSACTIONAL and BUFFERED heaps the element is also flushed after the 
+     * operation, which is not undo logged. There, atomic operations are valid only outside of a transaction, or on an 
+     * allocation made within the current transaction.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @param value the value to store
+     * @return the previous value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public int getAndSet(Allocation allocation, long index1, long index2, int value);
+
+    /**
+     * Atomically adds the supplied int delta to the value at the target layout within the supplied allocation. 
+     * See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param delta the value to add
+     * @return the previous value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public int getAndAdd(Allocation allocation, int delta);
+
+    /**
+     * Atomically adds the supplied int delta to the value at the target layout within the supplied allocation. 
+     * See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @param delta the value to add
+     * @return the previous value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public int getAndAdd(Allocation allocation, long index, int delta);
+
+    /**
+     * Atomically adds the supplied int delta to the value at the target layout within the supplied allocation. 
+     * See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @param delta the value to add
+     * @return the previous value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public int getAndAdd(Allocation allocation, long index1, long index2, int delta);
+
+    /**
+     * Atomically stores the supplied long value at the target layout within the supplied allocation if the current 
+     * long value is {@code expected}. See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param expected the expected current value
+     * @param value the value to store
+     * @return true if the value was stored
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public boolean compareAndSet(Allocation allocation, long expected, long value);
+
+    /**
+     * Atomically stores the supplied long value at the target layout within the supplied allocation if the current 
+     * long value is {@code expected}. See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @param expected the expected current value
+     * @param value the value to store
+     * @return true if the value was stored
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public boolean compareAndSet(Allocation allocation, long index, long expected, long value);
+
+    /**
+     * Atomically stores the supplied long value at the target layout within the supplied allocation if the current 
+     * long value is {@code expected}. See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @param expected the expected current value
+     * @param value the value to store
+     * @return true if the value was stored
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public boolean compareAndSet(Allocation allocation, long index1, long index2, long expected, long value);
+
+    /**
+     * Atomically stores the supplied long value at the target layout within the supplied allocation. See 
+     * {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param value the value to store
+     * @return the previous value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public long getAndSet(Allocation allocation, long value);
+
+    /**
+     * Atomically stores the supplied long value at the target layout within the supplied allocation. See 
+     * {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @param value the value to store
+     * @return the previous value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public long getAndSet(Allocation allocation, long index, long value);
+
+    /**
+     * Atomically stores the supplied long value at the target layout within the supplied allocation. See 
+     * {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @param value the value to store
+     * @return the previous value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public long getAndSet(Allocation allocation, long index1, long index2, long value);
+
+    /**
+     * Atomically adds the supplied long delta to the value at the target layout within the supplied allocation. 
+     * See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param delta the value to add
+     * @return the previous value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public long getAndAdd(Allocation allocation, long delta);
+
+    /**
+     * Atomically adds the supplied long delta to the value at the target layout within the supplied allocation. 
+     * See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @param delta the value to add
+     * @return the previous value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public long getAndAdd(Allocation allocation, long index, long delta);
+
+    /**
+     * Atomically adds the supplied long delta to the value at the target layout within the supplied allocation. 
+     * See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @param delta the value to add
+     * @return the previous value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public long getAndAdd(Allocation allocation, long index1, long index2, long delta);
+
+    /**
+     * Atomically stores the supplied address at the target layout within the supplied allocation if the current 
+     * address is {@code expected}. See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param expected the expected current value
+     * @param value the value to store
+     * @return true if the value was stored
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public boolean compareAndSet(Allocation allocation, MemoryAddress expected, MemoryAddress value);
+
+    /**
+     * Atomically stores the supplied address at the target layout within the supplied allocation if the current 
+     * address is {@code expected}. See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @param expected the expected current value
+     * @param value the value to store
+     * @return true if the value was stored
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public boolean compareAndSet(Allocation allocation, long index, MemoryAddress expected, MemoryAddress value);
+
+    /**
+     * Atomically stores the supplied address at the target layout within the supplied allocation if the current 
+     * address is {@code expected}. See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @param expected the expected current value
+     * @param value the value to store
+     * @return true if the value was stored
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public boolean compareAndSet(Allocation allocation, long index1, long index2, MemoryAddress expected, MemoryAddress value);
+
+    /**
+     * Atomically stores the supplied address at the target layout within the supplied allocation. See 
+     * {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param value the value to store
+     * @return the previous value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public MemoryAddress getAndSet(Allocation allocation, MemoryAddress value);
+
+    /**
+     * Atomically stores the supplied address at the target layout within the supplied allocation. See 
+     * {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @param value the value to store
+     * @return the previous value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public MemoryAddress getAndSet(Allocation allocation, long index, MemoryAddress value);
+
+    /**
+     * Atomically stores the supplied address at the target layout within the supplied allocation. See 
+     * {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @param value the value to store
+     * @return the previous value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public MemoryAddress getAndSet(Allocation allocation, long index1, long index2, MemoryAddress value);
+
+    /**
+     * Atomically stores the supplied allocation address at the target layout within the supplied allocation if the 
+     * current reference is {@code expected}. See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param expected the expected current allocation address, or null
+     * @param value the allocation address to store, or null
+     * @return true if the allocation address was stored
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public boolean compareAndSetReference(Allocation allocation, AllocationAddress expected, AllocationAddress value);
+
+    /**
+     * Atomically stores the supplied allocation address at the target layout within the supplied allocation if the 
+     * current reference is {@code expected}. See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @param expected the expected current allocation address, or null
+     * @param value the allocation address to store, or null
+     * @return true if the allocation address was stored
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public boolean compareAndSetReference(Allocation allocation, long index, AllocationAddress expected, AllocationAddress value);
+
+    /**
+     * Atomically stores the supplied allocation address at the target layout within the supplied allocation if the 
+     * current reference is {@code expected}. See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @param expected the expected current allocation address, or null
+     * @param value the allocation address to store, or null
+     * @return true if the allocation address was stored
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public boolean compareAndSetReference(Allocation allocation, long index1, long index2, AllocationAddress expected, AllocationAddress value);
+
+    /**
+     * Atomically stores the supplied allocation address at the target layout within the supplied allocation. 
+     * See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param value the allocation address to store, or null
+     * @return the previous allocation address, or null
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public AllocationAddress getAndSetReference(Allocation allocation, AllocationAddress value);
+
+    /**
+     * Atomically stores the supplied allocation address at the target layout within the supplied allocation. 
+     * See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @param value the allocation address to store, or null
+     * @return the previous allocation address, or null
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public AllocationAddress getAndSetReference(Allocation allocation, long index, AllocationAddress value);
+
+    /**
+     * Atomically stores the supplied allocation address at the target layout within the supplied allocation. 
+     * See {@link #getAndSet(Allocation, int)} for the behavior on each heap kind.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @param value the allocation address to store, or null
+     * @return the previous allocation address, or null
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use
+	 * @throws IllegalStateException if the target element is not aligned to its size, or if the operation is not 
+	 * valid within the current transaction
+     */
+    public AllocationAddress getAndSetReference(Allocation allocation, long index1, long index2, AllocationAddress value);
+
     /**
      * Stores the supplied value at the target layout within the supplied allocation.  
      * @param args a list of access coordinates followed by the value to store
@@ -381,6 +1042,249 @@ public interface Accessor {
 	 */
     public Object get(Object... args);
 
+    /**
+     * Retrieves the boolean value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to boolean
+     */
+    public boolean getBoolean(Allocation allocation);
+
+    /**
+     * Retrieves the boolean value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to boolean
+     */
+    public boolean getBoolean(Allocation allocation, long index);
+
+    /**
+     * Retrieves the boolean value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to boolean
+     */
+    public boolean getBoolean(Allocation allocation, long index1, long index2);
+
+    /**
+     * Retrieves the byte value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to byte
+     */
+    public byte getByte(Allocation allocation);
+
+    /**
+     * Retrieves the byte value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to byte
+     */
+    public byte getByte(Allocation allocation, long index);
+
+    /**
+     * Retrieves the byte value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to byte
+     */
+    public byte getByte(Allocation allocation, long index1, long index2);
+
+    /**
+     * Retrieves the short value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to short
+     */
+    public short getShort(Allocation allocation);
+
+    /**
+     * Retrieves the short value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to short
+     */
+    public short getShort(Allocation allocation, long index);
+
+    /**
+     * Retrieves the short value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to short
+     */
+    public short getShort(Allocation allocation, long index1, long index2);
+
+    /**
+     * Retrieves the int value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to int
+     */
+    public int getInt(Allocation allocation);
+
+    /**
+     * Retrieves the int value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to int
+     */
+    public int getInt(Allocation allocation, long index);
+
+    /**
+     * Retrieves the int value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to int
+     */
+    public int getInt(Allocation allocation, long index1, long index2);
+
+    /**
+     * Retrieves the long value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to long
+     */
+    public long getLong(Allocation allocation);
+
+    /**
+     * Retrieves the long value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to long
+     */
+    public long getLong(Allocation allocation, long index);
+
+    /**
+     * Retrieves the long value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to long
+     */
+    public long getLong(Allocation allocation, long index1, long index2);
+
+    /**
+     * Retrieves the float value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to float
+     */
+    public float getFloat(Allocation allocation);
+
+    /**
+     * Retrieves the float value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to float
+     */
+    public float getFloat(Allocation allocation, long index);
+
+    /**
+     * Retrieves the float value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to float
+     */
+    public float getFloat(Allocation allocation, long index1, long index2);
+
+    /**
+     * Retrieves the double value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to double
+     */
+    public double getDouble(Allocation allocation);
+
+    /**
+     * Retrieves the double value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to double
+     */
+    public double getDouble(Allocation allocation, long index);
+
+    /**
+     * Retrieves the double value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to double
+     */
+    public double getDouble(Allocation allocation, long index1, long index2);
+
+    /**
+     * Retrieves the char value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to char
+     */
+    public char getChar(Allocation allocation);
+
+    /**
+     * Retrieves the char value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to char
+     */
+    public char getChar(Allocation allocation, long index);
+
+    /**
+     * Retrieves the char value stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @return the value
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to char
+     */
+    public char getChar(Allocation allocation, long index1, long index2);
+
+    /**
+     * Retrieves the address stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @return the address
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to MemoryAddress
+     */
+    public MemoryAddress getAddress(Allocation allocation);
+
+    /**
+     * Retrieves the address stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @return the address
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to MemoryAddress
+     */
+    public MemoryAddress getAddress(Allocation allocation, long index);
+
+    /**
+     * Retrieves the address stored at the target layout within the supplied allocation, without boxing.  
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @return the address
+	 * @throws WrongMethodTypeException if the allocation is not in a valid state for use or the carrier of the target layout cannot be converted to MemoryAddress
+     */
+    public MemoryAddress getAddress(Allocation allocation, long index1, long index2);
+
     /**
      * Retrieves the address stored at the target layout within the supplied allocation.  
      * A translation from relocatable address to absolute address will be done to enable use of the previously 
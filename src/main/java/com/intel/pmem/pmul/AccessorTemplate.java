@@ -0,0 +1,946 @@
+/* 
+ * Copyright (C) 2022 Intel Corporation
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ * 
+ */
+
+package com.intel.pmem.pmul;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.invoke.WrongMethodTypeException;
+import java.util.Arrays;
+import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.MemoryHandles;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ValueLayout;
+
+/*
+ The class file of this class is the template from which Generator defines one hidden class per 
+ accessor. It is never loaded under its own name. Each hidden class receives the byte offset 
+ handle, element size and element layout of its layout path as class data, so they are constants 
+ in its static final fields. Reads and writes go through a var handle of the element layout, whose 
+ coordinates are a segment and a byte offset, so that one helper per carrier serves every number 
+ of access coordinates and the element can be accessed in the segment the heap returns for it.
+*/
+final class AccessorTemplate implements AccessorImpl {
+	static final MethodHandle byteOffsetHandle;
+	static final long elementSize;
+	static final ValueLayout elementLayout;
+	static final VarHandle elementHandle;
+
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			byteOffsetHandle = MethodHandles.classDataAt(lookup, ConstantDescs.DEFAULT_NAME, MethodHandle.class, 0);
+			elementSize = MethodHandles.classDataAt(lookup, ConstantDescs.DEFAULT_NAME, Long.class, 1);
+			elementLayout = MethodHandles.classDataAt(lookup, ConstantDescs.DEFAULT_NAME, ValueLayout.class, 2);
+			elementHandle = MemoryHandles.varHandle(elementLayout);
+		}
+		catch (IllegalAccessException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	AccessorTemplate() {
+	}
+
+	public AllocationAddress getReference(Allocation allocation) {
+		MemoryAddress value = getAddressAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle));
+        if (value.equals(MemoryAddress.NULL)) return null;
+        return allocation.heap().reformAddress(value);
+	}
+
+	public AllocationAddress getReference(Allocation allocation, long index) {
+		MemoryAddress value = getAddressAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index));
+        if (value.equals(MemoryAddress.NULL)) return null;
+        return allocation.heap().reformAddress(value);
+	}
+
+	public AllocationAddress getReference(Allocation allocation, long index1, long index2) {
+		MemoryAddress value = getAddressAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2));
+        if (value.equals(MemoryAddress.NULL)) return null;
+        return allocation.heap().reformAddress(value);
+	}
+
+	public Object get(Allocation allocation) {
+		return getAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle));
+	}
+
+	public Object get(Allocation allocation, long index) {
+		return getAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index));
+	}
+
+	public Object get(Allocation allocation, long index1, long index2) {
+		return getAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2));
+	}
+
+	public boolean getBoolean(Allocation allocation) {
+		return getBooleanAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle));
+	}
+
+	public boolean getBoolean(Allocation allocation, long index) {
+		return getBooleanAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index));
+	}
+
+	public boolean getBoolean(Allocation allocation, long index1, long index2) {
+		return getBooleanAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2));
+	}
+
+	public byte getByte(Allocation allocation) {
+		return getByteAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle));
+	}
+
+	public byte getByte(Allocation allocation, long index) {
+		return getByteAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index));
+	}
+
+	public byte getByte(Allocation allocation, long index1, long index2) {
+		return getByteAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2));
+	}
+
+	public short getShort(Allocation allocation) {
+		return getShortAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle));
+	}
+
+	public short getShort(Allocation allocation, long index) {
+		return getShortAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index));
+	}
+
+	public short getShort(Allocation allocation, long index1, long index2) {
+		return getShortAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2));
+	}
+
+	public int getInt(Allocation allocation) {
+		return getIntAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle));
+	}
+
+	public int getInt(Allocation allocation, long index) {
+		return getIntAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index));
+	}
+
+	public int getInt(Allocation allocation, long index1, long index2) {
+		return getIntAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2));
+	}
+
+	public long getLong(Allocation allocation) {
+		return getLongAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle));
+	}
+
+	public long getLong(Allocation allocation, long index) {
+		return getLongAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index));
+	}
+
+	public long getLong(Allocation allocation, long index1, long index2) {
+		return getLongAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2));
+	}
+
+	public float getFloat(Allocation allocation) {
+		return getFloatAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle));
+	}
+
+	public float getFloat(Allocation allocation, long index) {
+		return getFloatAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index));
+	}
+
+	public float getFloat(Allocation allocation, long index1, long index2) {
+		return getFloatAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2));
+	}
+
+	public double getDouble(Allocation allocation) {
+		return getDoubleAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle));
+	}
+
+	public double getDouble(Allocation allocation, long index) {
+		return getDoubleAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index));
+	}
+
+	public double getDouble(Allocation allocation, long index1, long index2) {
+		return getDoubleAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2));
+	}
+
+	public char getChar(Allocation allocation) {
+		return getCharAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle));
+	}
+
+	public char getChar(Allocation allocation, long index) {
+		return getCharAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index));
+	}
+
+	public char getChar(Allocation allocation, long index1, long index2) {
+		return getCharAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2));
+	}
+
+	public MemoryAddress getAddress(Allocation allocation) {
+		return getAddressAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle));
+	}
+
+	public MemoryAddress getAddress(Allocation allocation, long index) {
+		return getAddressAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index));
+	}
+
+	public MemoryAddress getAddress(Allocation allocation, long index1, long index2) {
+		return getAddressAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2));
+	}
+
+	public Object get(Object... args) {
+		Allocation allocation = (Allocation)args[0];
+		MemorySegment segment = allocation.segment();
+		long byteOffset = HighLevelHeap.byteOffset(byteOffsetHandle, Arrays.copyOfRange(args, 1, args.length));
+		MemorySegment source = allocation.heap().readSegment(segment, byteOffset, elementSize);
+		try {
+			return elementHandle.toMethodHandle(VarHandle.AccessMode.GET).invokeWithArguments(source, HighLevelHeap.targetOffset(segment, source, byteOffset));
+		}
+		catch (RuntimeException e) {
+			throw e;
+		}
+		catch (Throwable t) {
+			throw new RuntimeException(t.getMessage());
+		}
+	}
+
+	// Reads through the element handle at the byte offset computed from the access coordinates, from the 
+	// segment the heap returns for the element, so that one method per carrier serves every number of 
+	// access coordinates.
+	private static Object getAt(Allocation allocation, long byteOffset) {
+		MemorySegment segment = allocation.segment();
+		MemorySegment source = allocation.heap().readSegment(segment, byteOffset, elementSize);
+		return elementHandle.get(source, HighLevelHeap.targetOffset(segment, source, byteOffset));
+	}
+
+	private static boolean getBooleanAt(Allocation allocation, long byteOffset) {
+		MemorySegment segment = allocation.segment();
+		MemorySegment source = allocation.heap().readSegment(segment, byteOffset, elementSize);
+		return (boolean)elementHandle.get(source, HighLevelHeap.targetOffset(segment, source, byteOffset));
+	}
+
+	private static byte getByteAt(Allocation allocation, long byteOffset) {
+		MemorySegment segment = allocation.segment();
+		MemorySegment source = allocation.heap().readSegment(segment, byteOffset, elementSize);
+		return (byte)elementHandle.get(source, HighLevelHeap.targetOffset(segment, source, byteOffset));
+	}
+
+	private static short getShortAt(Allocation allocation, long byteOffset) {
+		MemorySegment segment = allocation.segment();
+		MemorySegment source = allocation.heap().readSegment(segment, byteOffset, elementSize);
+		return (short)elementHandle.get(source, HighLevelHeap.targetOffset(segment, source, byteOffset));
+	}
+
+	private static int getIntAt(Allocation allocation, long byteOffset) {
+		MemorySegment segment = allocation.segment();
+		MemorySegment source = allocation.heap().readSegment(segment, byteOffset, elementSize);
+		return (int)elementHandle.get(source, HighLevelHeap.targetOffset(segment, source, byteOffset));
+	}
+
+	private static long getLongAt(Allocation allocation, long byteOffset) {
+		MemorySegment segment = allocation.segment();
+		MemorySegment source = allocation.heap().readSegment(segment, byteOffset, elementSize);
+		return (long)elementHandle.get(source, HighLevelHeap.targetOffset(segment, source, byteOffset));
+	}
+
+	private static float getFloatAt(Allocation allocation, long byteOffset) {
+		MemorySegment segment = allocation.segment();
+		MemorySegment source = allocation.heap().readSegment(segment, byteOffset, elementSize);
+		return (float)elementHandle.get(source, HighLevelHeap.targetOffset(segment, source, byteOffset));
+	}
+
+	private static double getDoubleAt(Allocation allocation, long byteOffset) {
+		MemorySegment segment = allocation.segment();
+		MemorySegment source = allocation.heap().readSegment(segment, byteOffset, elementSize);
+		return (double)elementHandle.get(source, HighLevelHeap.targetOffset(segment, source, byteOffset));
+	}
+
+	private static char getCharAt(Allocation allocation, long byteOffset) {
+		MemorySegment segment = allocation.segment();
+		MemorySegment source = allocation.heap().readSegment(segment, byteOffset, elementSize);
+		return (char)elementHandle.get(source, HighLevelHeap.targetOffset(segment, source, byteOffset));
+	}
+
+	private static MemoryAddress getAddressAt(Allocation allocation, long byteOffset) {
+		MemorySegment segment = allocation.segment();
+		MemorySegment source = allocation.heap().readSegment(segment, byteOffset, elementSize);
+		return (MemoryAddress)elementHandle.get(source, HighLevelHeap.targetOffset(segment, source, byteOffset));
+	}
+
+	public AllocationAddress getReference(Object... args) {
+		Allocation allocation = (Allocation)args[0];
+        MemoryAddress value = (MemoryAddress)get(args);
+        return value.equals(MemoryAddress.NULL) ? null : allocation.heap().reformAddress(value);
+	}
+
+	public void set(Allocation allocation, boolean value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), value);
+	}
+
+	public void set(Allocation allocation, long index, boolean value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), value);
+	}
+
+	public void set(Allocation allocation, long index1, long index2, boolean value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), value);
+	}
+
+	public void set(Allocation allocation, byte value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), value);
+	}
+
+	public void set(Allocation allocation, long index, byte value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), value);
+	}
+
+	public void set(Allocation allocation, long index1, long index2, byte value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), value);
+	}
+
+	public void set(Allocation allocation, short value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), value);
+	}
+
+	public void set(Allocation allocation, long index, short value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), value);
+	}
+
+	public void set(Allocation allocation, long index1, long index2, short value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), value);
+	}
+
+	public void set(Allocation allocation, int value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), value);
+	}
+
+	public void set(Allocation allocation, long index, int value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), value);
+	}
+
+	public void set(Allocation allocation, long index1, long index2, int value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), value);
+	}
+
+	public void set(Allocation allocation, long value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), value);
+	}
+
+	public void set(Allocation allocation, long index, long value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), value);
+	}
+
+	public void set(Allocation allocation, long index1, long index2, long value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), value);
+	}
+
+	public void set(Allocation allocation, float value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), value);
+	}
+
+	public void set(Allocation allocation, long index, float value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), value);
+	}
+
+	public void set(Allocation allocation, long index1, long index2, float value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), value);
+	}
+
+	public void set(Allocation allocation, double value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), value);
+	}
+
+	public void set(Allocation allocation, long index, double value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), value);
+	}
+
+	public void set(Allocation allocation, long index1, long index2, double value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), value);
+	}
+
+	public void set(Allocation allocation, char value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), value);
+	}
+
+	public void set(Allocation allocation, long index, char value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), value);
+	}
+
+	public void set(Allocation allocation, long index1, long index2, char value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), value);
+	}
+
+	public void set(Allocation allocation, MemoryAddress value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), value);
+	}
+
+	public void set(Allocation allocation, long index, MemoryAddress value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), value);
+	}
+
+	public void set(Allocation allocation, long index1, long index2, MemoryAddress value) {
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), value);
+	}
+
+	public void setReference(Allocation allocation, AllocationAddress value) {
+		MemoryAddress address = value == null ? MemoryAddress.NULL : allocation.heap().transformAddress(value);
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), address);
+	}
+
+	public void setReference(Allocation allocation, long index, AllocationAddress value) {
+		MemoryAddress address = value == null ? MemoryAddress.NULL : allocation.heap().transformAddress(value);
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), address);
+	}
+
+	public void setReference(Allocation allocation, long index1, long index2, AllocationAddress value) {
+		MemoryAddress address = value == null ? MemoryAddress.NULL : allocation.heap().transformAddress(value);
+		setAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), address);
+	}
+
+	// Writes through the element handle at the byte offset computed from the access coordinates, so that
+	// one method per carrier runs the heap's write hooks.
+	private static void setAt(Allocation allocation, long byteOffset, boolean value) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginWrite(segment, byteOffset, elementSize);
+		try {
+			elementHandle.set(target, HighLevelHeap.targetOffset(segment, target, byteOffset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, byteOffset, elementSize);
+	}
+
+	private static void setAt(Allocation allocation, long byteOffset, byte value) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginWrite(segment, byteOffset, elementSize);
+		try {
+			elementHandle.set(target, HighLevelHeap.targetOffset(segment, target, byteOffset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, byteOffset, elementSize);
+	}
+
+	private static void setAt(Allocation allocation, long byteOffset, short value) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginWrite(segment, byteOffset, elementSize);
+		try {
+			elementHandle.set(target, HighLevelHeap.targetOffset(segment, target, byteOffset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, byteOffset, elementSize);
+	}
+
+	private static void setAt(Allocation allocation, long byteOffset, int value) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginWrite(segment, byteOffset, elementSize);
+		try {
+			elementHandle.set(target, HighLevelHeap.targetOffset(segment, target, byteOffset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, byteOffset, elementSize);
+	}
+
+	private static void setAt(Allocation allocation, long byteOffset, long value) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginWrite(segment, byteOffset, elementSize);
+		try {
+			elementHandle.set(target, HighLevelHeap.targetOffset(segment, target, byteOffset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, byteOffset, elementSize);
+	}
+
+	private static void setAt(Allocation allocation, long byteOffset, float value) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginWrite(segment, byteOffset, elementSize);
+		try {
+			elementHandle.set(target, HighLevelHeap.targetOffset(segment, target, byteOffset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, byteOffset, elementSize);
+	}
+
+	private static void setAt(Allocation allocation, long byteOffset, double value) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginWrite(segment, byteOffset, elementSize);
+		try {
+			elementHandle.set(target, HighLevelHeap.targetOffset(segment, target, byteOffset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, byteOffset, elementSize);
+	}
+
+	private static void setAt(Allocation allocation, long byteOffset, char value) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginWrite(segment, byteOffset, elementSize);
+		try {
+			elementHandle.set(target, HighLevelHeap.targetOffset(segment, target, byteOffset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, byteOffset, elementSize);
+	}
+
+	private static void setAt(Allocation allocation, long byteOffset, MemoryAddress value) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginWrite(segment, byteOffset, elementSize);
+		try {
+			elementHandle.set(target, HighLevelHeap.targetOffset(segment, target, byteOffset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, byteOffset, elementSize);
+	}
+
+	public void setRange(Allocation allocation, long fromIndex, byte[] values) {
+		setRange(allocation, fromIndex, values, values.length, byte.class);
+	}
+
+	public void getRange(Allocation allocation, long fromIndex, byte[] values) {
+		getRange(allocation, fromIndex, values, values.length, byte.class);
+	}
+
+	public void setRange(Allocation allocation, long fromIndex, short[] values) {
+		setRange(allocation, fromIndex, values, values.length, short.class);
+	}
+
+	public void getRange(Allocation allocation, long fromIndex, short[] values) {
+		getRange(allocation, fromIndex, values, values.length, short.class);
+	}
+
+	public void setRange(Allocation allocation, long fromIndex, char[] values) {
+		setRange(allocation, fromIndex, values, values.length, char.class);
+	}
+
+	public void getRange(Allocation allocation, long fromIndex, char[] values) {
+		getRange(allocation, fromIndex, values, values.length, char.class);
+	}
+
+	public void setRange(Allocation allocation, long fromIndex, int[] values) {
+		setRange(allocation, fromIndex, values, values.length, int.class);
+	}
+
+	public void getRange(Allocation allocation, long fromIndex, int[] values) {
+		getRange(allocation, fromIndex, values, values.length, int.class);
+	}
+
+	public void setRange(Allocation allocation, long fromIndex, long[] values) {
+		setRange(allocation, fromIndex, values, values.length, long.class);
+	}
+
+	public void getRange(Allocation allocation, long fromIndex, long[] values) {
+		getRange(allocation, fromIndex, values, values.length, long.class);
+	}
+
+	public void setRange(Allocation allocation, long fromIndex, float[] values) {
+		setRange(allocation, fromIndex, values, values.length, float.class);
+	}
+
+	public void getRange(Allocation allocation, long fromIndex, float[] values) {
+		getRange(allocation, fromIndex, values, values.length, float.class);
+	}
+
+	public void setRange(Allocation allocation, long fromIndex, double[] values) {
+		setRange(allocation, fromIndex, values, values.length, double.class);
+	}
+
+	public void getRange(Allocation allocation, long fromIndex, double[] values) {
+		getRange(allocation, fromIndex, values, values.length, double.class);
+	}
+
+	public void setRange(Allocation allocation, long fromIndex, MemorySegment source) {
+		setRange(allocation, fromIndex, source, count(source), null);
+	}
+
+	public void getRange(Allocation allocation, long fromIndex, MemorySegment destination) {
+		getRange(allocation, fromIndex, destination, count(destination), null);
+	}
+
+	// Writes count elements from values, an array of the given carrier or, if carrier is null, a segment, 
+	// as one write of the range they cover, so that heaps flush or snapshot the range once.
+	private void setRange(Allocation allocation, long fromIndex, Object values, int count, Class<?> carrier) {
+		checkRange(carrier);
+		if (count == 0) return;
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		long byteOffset = HighLevelHeap.byteOffset(byteOffsetHandle, fromIndex);
+		long stride = stride(byteOffset, fromIndex, count);
+		long byteSize = stride * (count - 1) + elementSize;
+		MemorySegment target = heap.beginWrite(segment, byteOffset, byteSize);
+		long targetOffset = HighLevelHeap.targetOffset(segment, target, byteOffset);
+		try {
+			if (stride == elementSize) copy(values, 0, target, targetOffset, count);
+			else for (int i = 0; i < count; i++) copy(values, i, target, targetOffset + i * stride, 1);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, byteOffset, byteSize);
+	}
+
+	private void getRange(Allocation allocation, long fromIndex, Object values, int count, Class<?> carrier) {
+		checkRange(carrier);
+		if (count == 0) return;
+		long byteOffset = HighLevelHeap.byteOffset(byteOffsetHandle, fromIndex);
+		long stride = stride(byteOffset, fromIndex, count);
+		MemorySegment segment = allocation.segment();
+		MemorySegment source = allocation.heap().readSegment(segment, byteOffset, stride * (count - 1) + elementSize);
+		long sourceOffset = HighLevelHeap.targetOffset(segment, source, byteOffset);
+		if (stride == elementSize) copy(source, sourceOffset, values, 0, count);
+		else for (int i = 0; i < count; i++) copy(source, sourceOffset + i * stride, values, i, 1);
+	}
+
+	private static void checkRange(Class<?> carrier) {
+		if (byteOffsetHandle.type().parameterCount() != 1) throw new WrongMethodTypeException("Range access requires exactly one access coordinate");
+		if (carrier != null && carrier != elementLayout.carrier()) throw new WrongMethodTypeException("Cannot access " + elementLayout.carrier() + " elements as " + carrier);
+	}
+
+	// bounds-checks the last index of the range and returns the distance between consecutive elements
+	private static long stride(long byteOffset, long fromIndex, int count) {
+		long lastOffset = HighLevelHeap.byteOffset(byteOffsetHandle, fromIndex + count - 1);
+		return count == 1 ? elementSize : (lastOffset - byteOffset) / (count - 1);
+	}
+
+	private static int count(MemorySegment elements) {
+		if (elements.byteSize() % elementSize != 0 || elements.byteSize() / elementSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Segment size " + elements.byteSize() + " is not a valid multiple of element size " + elementSize);
+		}
+		return (int)(elements.byteSize() / elementSize);
+	}
+
+	private static void copy(Object values, int index, MemorySegment target, long byteOffset, int count) {
+		if (values instanceof MemorySegment source) MemorySegment.copy(source, index * elementSize, target, byteOffset, count * elementSize);
+		else MemorySegment.copy(values, index, target, elementLayout, byteOffset, count);
+	}
+
+	private static void copy(MemorySegment source, long byteOffset, Object values, int index, int count) {
+		if (values instanceof MemorySegment target) MemorySegment.copy(source, byteOffset, target, index * elementSize, count * elementSize);
+		else MemorySegment.copy(source, elementLayout, byteOffset, values, index, count);
+	}
+
+	public boolean compareAndSet(Allocation allocation, int expected, int value) {
+		return compareAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), expected, value);
+	}
+
+	public boolean compareAndSet(Allocation allocation, long index, int expected, int value) {
+		return compareAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), expected, value);
+	}
+
+	public boolean compareAndSet(Allocation allocation, long index1, long index2, int expected, int value) {
+		return compareAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), expected, value);
+	}
+
+	public int getAndSet(Allocation allocation, int value) {
+		return getAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), value);
+	}
+
+	public int getAndSet(Allocation allocation, long index, int value) {
+		return getAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), value);
+	}
+
+	public int getAndSet(Allocation allocation, long index1, long index2, int value) {
+		return getAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), value);
+	}
+
+	public int getAndAdd(Allocation allocation, int delta) {
+		return getAndAddAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), delta);
+	}
+
+	public int getAndAdd(Allocation allocation, long index, int delta) {
+		return getAndAddAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), delta);
+	}
+
+	public int getAndAdd(Allocation allocation, long index1, long index2, int delta) {
+		return getAndAddAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), delta);
+	}
+
+	public boolean compareAndSet(Allocation allocation, long expected, long value) {
+		return compareAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), expected, value);
+	}
+
+	public boolean compareAndSet(Allocation allocation, long index, long expected, long value) {
+		return compareAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), expected, value);
+	}
+
+	public boolean compareAndSet(Allocation allocation, long index1, long index2, long expected, long value) {
+		return compareAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), expected, value);
+	}
+
+	public long getAndSet(Allocation allocation, long value) {
+		return getAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), value);
+	}
+
+	public long getAndSet(Allocation allocation, long index, long value) {
+		return getAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), value);
+	}
+
+	public long getAndSet(Allocation allocation, long index1, long index2, long value) {
+		return getAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), value);
+	}
+
+	public long getAndAdd(Allocation allocation, long delta) {
+		return getAndAddAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), delta);
+	}
+
+	public long getAndAdd(Allocation allocation, long index, long delta) {
+		return getAndAddAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), delta);
+	}
+
+	public long getAndAdd(Allocation allocation, long index1, long index2, long delta) {
+		return getAndAddAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), delta);
+	}
+
+	public boolean compareAndSet(Allocation allocation, MemoryAddress expected, MemoryAddress value) {
+		return compareAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), expected, value);
+	}
+
+	public boolean compareAndSet(Allocation allocation, long index, MemoryAddress expected, MemoryAddress value) {
+		return compareAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), expected, value);
+	}
+
+	public boolean compareAndSet(Allocation allocation, long index1, long index2, MemoryAddress expected, MemoryAddress value) {
+		return compareAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), expected, value);
+	}
+
+	public MemoryAddress getAndSet(Allocation allocation, MemoryAddress value) {
+		return getAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), value);
+	}
+
+	public MemoryAddress getAndSet(Allocation allocation, long index, MemoryAddress value) {
+		return getAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), value);
+	}
+
+	public MemoryAddress getAndSet(Allocation allocation, long index1, long index2, MemoryAddress value) {
+		return getAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), value);
+	}
+
+	public boolean compareAndSetReference(Allocation allocation, AllocationAddress expected, AllocationAddress value) {
+		HighLevelHeap heap = allocation.heap();
+		MemoryAddress expectedAddress = expected == null ? MemoryAddress.NULL : heap.transformAddress(expected);
+		MemoryAddress address = value == null ? MemoryAddress.NULL : heap.transformAddress(value);
+		return compareAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), expectedAddress, address);
+	}
+
+	public boolean compareAndSetReference(Allocation allocation, long index, AllocationAddress expected, AllocationAddress value) {
+		HighLevelHeap heap = allocation.heap();
+		MemoryAddress expectedAddress = expected == null ? MemoryAddress.NULL : heap.transformAddress(expected);
+		MemoryAddress address = value == null ? MemoryAddress.NULL : heap.transformAddress(value);
+		return compareAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), expectedAddress, address);
+	}
+
+	public boolean compareAndSetReference(Allocation allocation, long index1, long index2, AllocationAddress expected, AllocationAddress value) {
+		HighLevelHeap heap = allocation.heap();
+		MemoryAddress expectedAddress = expected == null ? MemoryAddress.NULL : heap.transformAddress(expected);
+		MemoryAddress address = value == null ? MemoryAddress.NULL : heap.transformAddress(value);
+		return compareAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), expectedAddress, address);
+	}
+
+	public AllocationAddress getAndSetReference(Allocation allocation, AllocationAddress value) {
+		HighLevelHeap heap = allocation.heap();
+		MemoryAddress address = value == null ? MemoryAddress.NULL : heap.transformAddress(value);
+		MemoryAddress result = getAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle), address);
+		return result.equals(MemoryAddress.NULL) ? null : heap.reformAddress(result);
+	}
+
+	public AllocationAddress getAndSetReference(Allocation allocation, long index, AllocationAddress value) {
+		HighLevelHeap heap = allocation.heap();
+		MemoryAddress address = value == null ? MemoryAddress.NULL : heap.transformAddress(value);
+		MemoryAddress result = getAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index), address);
+		return result.equals(MemoryAddress.NULL) ? null : heap.reformAddress(result);
+	}
+
+	public AllocationAddress getAndSetReference(Allocation allocation, long index1, long index2, AllocationAddress value) {
+		HighLevelHeap heap = allocation.heap();
+		MemoryAddress address = value == null ? MemoryAddress.NULL : heap.transformAddress(value);
+		MemoryAddress result = getAndSetAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2), address);
+		return result.equals(MemoryAddress.NULL) ? null : heap.reformAddress(result);
+	}
+
+	// Atomic counterparts of setAt.
+	private static boolean compareAndSetAt(Allocation allocation, long byteOffset, int expected, int value) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginAtomicWrite(segment, byteOffset, elementSize);
+		boolean result;
+		try {
+			result = elementHandle.compareAndSet(target, byteOffset, expected, value);
+		}
+		catch (Throwable t) {
+			heap.abortAtomicWrite(t);
+			throw t;
+		}
+		heap.endAtomicWrite(segment, byteOffset, elementSize);
+		return result;
+	}
+
+	private static int getAndSetAt(Allocation allocation, long byteOffset, int value) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginAtomicWrite(segment, byteOffset, elementSize);
+		int result;
+		try {
+			result = (int)elementHandle.getAndSet(target, byteOffset, value);
+		}
+		catch (Throwable t) {
+			heap.abortAtomicWrite(t);
+			throw t;
+		}
+		heap.endAtomicWrite(segment, byteOffset, elementSize);
+		return result;
+	}
+
+	private static int getAndAddAt(Allocation allocation, long byteOffset, int delta) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginAtomicWrite(segment, byteOffset, elementSize);
+		int result;
+		try {
+			result = (int)elementHandle.getAndAdd(target, byteOffset, delta);
+		}
+		catch (Throwable t) {
+			heap.abortAtomicWrite(t);
+			throw t;
+		}
+		heap.endAtomicWrite(segment, byteOffset, elementSize);
+		return result;
+	}
+
+	private static boolean compareAndSetAt(Allocation allocation, long byteOffset, long expected, long value) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginAtomicWrite(segment, byteOffset, elementSize);
+		boolean result;
+		try {
+			result = elementHandle.compareAndSet(target, byteOffset, expected, value);
+		}
+		catch (Throwable t) {
+			heap.abortAtomicWrite(t);
+			throw t;
+		}
+		heap.endAtomicWrite(segment, byteOffset, elementSize);
+		return result;
+	}
+
+	private static long getAndSetAt(Allocation allocation, long byteOffset, long value) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginAtomicWrite(segment, byteOffset, elementSize);
+		long result;
+		try {
+			result = (long)elementHandle.getAndSet(target, byteOffset, value);
+		}
+		catch (Throwable t) {
+			heap.abortAtomicWrite(t);
+			throw t;
+		}
+		heap.endAtomicWrite(segment, byteOffset, elementSize);
+		return result;
+	}
+
+	private static long getAndAddAt(Allocation allocation, long byteOffset, long delta) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginAtomicWrite(segment, byteOffset, elementSize);
+		long result;
+		try {
+			result = (long)elementHandle.getAndAdd(target, byteOffset, delta);
+		}
+		catch (Throwable t) {
+			heap.abortAtomicWrite(t);
+			throw t;
+		}
+		heap.endAtomicWrite(segment, byteOffset, elementSize);
+		return result;
+	}
+
+	private static boolean compareAndSetAt(Allocation allocation, long byteOffset, MemoryAddress expected, MemoryAddress value) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginAtomicWrite(segment, byteOffset, elementSize);
+		boolean result;
+		try {
+			result = elementHandle.compareAndSet(target, byteOffset, expected, value);
+		}
+		catch (Throwable t) {
+			heap.abortAtomicWrite(t);
+			throw t;
+		}
+		heap.endAtomicWrite(segment, byteOffset, elementSize);
+		return result;
+	}
+
+	private static MemoryAddress getAndSetAt(Allocation allocation, long byteOffset, MemoryAddress value) {
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		MemorySegment target = heap.beginAtomicWrite(segment, byteOffset, elementSize);
+		MemoryAddress result;
+		try {
+			result = (MemoryAddress)elementHandle.getAndSet(target, byteOffset, value);
+		}
+		catch (Throwable t) {
+			heap.abortAtomicWrite(t);
+			throw t;
+		}
+		heap.endAtomicWrite(segment, byteOffset, elementSize);
+		return result;
+	}
+
+    public void set(Object... args) {
+		// TODO: handle null Accessor set, map to 0
+		Allocation allocation = (Allocation)args[0];
+		HighLevelHeap heap = allocation.heap();
+		MemorySegment segment = allocation.segment();
+		long byteOffset = HighLevelHeap.byteOffset(byteOffsetHandle, Arrays.copyOfRange(args, 1, args.length - 1));
+		MemorySegment target = heap.beginWrite(segment, byteOffset, elementSize);
+		try {
+			elementHandle.toMethodHandle(VarHandle.AccessMode.SET).invokeWithArguments(target, HighLevelHeap.targetOffset(segment, target, byteOffset), args[args.length - 1]);
+		}
+		catch (RuntimeException e) {
+			heap.abortWrite(e);
+			throw e;
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw new RuntimeException(t.getMessage());
+		}
+		heap.endWrite(segment, byteOffset, elementSize);
+	}
+
+    public void setReference(Object... args) {
+		// TODO: handle null Accessor set, map to 0
+		AllocationAddress value = (AllocationAddress)args[args.length - 1];
+        args[args.length - 1] = value == null ? MemoryAddress.NULL : value.heap().transformAddress(value);
+        set(args);
+	}
+}
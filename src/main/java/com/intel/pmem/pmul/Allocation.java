@@ -64,6 +64,22 @@ public class Allocation {
         return heap;
 	}
 
+	// the segment through which byteSize bytes at offset are read, which reflects writes buffered by the heap
+	private MemorySegment readable(long offset, long byteSize) {
+		return heap == null ? segment : heap.readSegment(segment, offset, byteSize);
+	}
+
+	// the offset of the bytes at offset within source, a segment returned for them by readable
+	private long readOffset(MemorySegment source, long offset) {
+		return HighLevelHeap.targetOffset(segment, source, offset);
+	}
+
+	// indexed writes go through set at the scaled offset, so they make the element check of MemorySegment.setAtIndex here
+	private static <L extends ValueLayout> L checkElementAlignment(L layout) {
+		if (layout.byteAlignment() > layout.byteSize()) throw new IllegalArgumentException("Layout alignment greater than its size");
+		return layout;
+	}
+
 	/**
 	 * Returns the AllocationAddress of this Allocation. This stable value can be stored and used later to regain 
 	 * access to the memory.
@@ -125,7 +141,8 @@ public class Allocation {
 	 * @throws UnsupportedOperationException if the destination segment is read only
 	 */
     public static void copy(Allocation srcAllocation, long srcOffset, MemorySegment dstSegment, long dstOffset, long length) {
-        MemorySegment.copy(srcAllocation.segment(), srcOffset, dstSegment, dstOffset, length);
+        MemorySegment source = srcAllocation.readable(srcOffset, length);
+        MemorySegment.copy(source, srcAllocation.readOffset(source, srcOffset), dstSegment, dstOffset, length);
     }
 
 	/**
@@ -175,7 +192,8 @@ public class Allocation {
 	 * @throws UnsupportedOperationException if the destination segment is read only
 	 */
     public static void copy(Allocation srcAllocation, ValueLayout srcElementLayout, long srcOffset, MemorySegment dstSegment, ValueLayout dstElementLayout, long dstOffset, long elementCount) {
-        MemorySegment.copy(srcAllocation.segment(), srcElementLayout, srcOffset, dstSegment, dstElementLayout, dstOffset, elementCount);
+        MemorySegment source = srcAllocation.readable(srcOffset, srcElementLayout.byteSize() * elementCount);
+        MemorySegment.copy(source, srcElementLayout, srcAllocation.readOffset(source, srcOffset), dstSegment, dstElementLayout, dstOffset, elementCount);
     }
 
 	/**
@@ -205,7 +223,7 @@ public class Allocation {
 	 * @param value the byte value used to fill the allocation
 	 */
     public void fill(byte value) {
-        heap.execute(this, () -> { segment.fill(value); });
+        heap.fill(this, value);
     }
 
     /**
@@ -270,7 +288,8 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public MemoryAddress get(ValueLayout.OfAddress layout, long offset) {
-        return segment.get(layout, offset);
+        MemorySegment source = readable(offset, layout.byteSize());
+        return source.get(layout, readOffset(source, offset));
     }
 
     /**
@@ -283,7 +302,8 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public boolean get(ValueLayout.OfBoolean layout, long offset) {
-        return segment.get(layout, offset);
+        MemorySegment source = readable(offset, layout.byteSize());
+        return source.get(layout, readOffset(source, offset));
     }
 
     /**
@@ -296,7 +316,8 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public byte get(ValueLayout.OfByte layout, long offset) {
-        return segment.get(layout, offset);
+        MemorySegment source = readable(offset, layout.byteSize());
+        return source.get(layout, readOffset(source, offset));
     }
 
     /**
@@ -309,7 +330,8 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public char get(ValueLayout.OfChar layout, long offset) {
-        return segment.get(layout, offset);
+        MemorySegment source = readable(offset, layout.byteSize());
+        return source.get(layout, readOffset(source, offset));
     }
 
     /**
@@ -322,7 +344,8 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public double get(ValueLayout.OfDouble layout, long offset) {
-        return segment.get(layout, offset);
+        MemorySegment source = readable(offset, layout.byteSize());
+        return source.get(layout, readOffset(source, offset));
     }
 
     /**
@@ -335,7 +358,8 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public float get(ValueLayout.OfFloat layout, long offset) {
-        return segment.get(layout, offset);
+        MemorySegment source = readable(offset, layout.byteSize());
+        return source.get(layout, readOffset(source, offset));
     }
 
     /**
@@ -348,7 +372,8 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public int get(ValueLayout.OfInt layout, long offset) {
-        return segment.get(layout, offset);
+        MemorySegment source = readable(offset, layout.byteSize());
+        return source.get(layout, readOffset(source, offset));
     }
 
     /**
@@ -361,7 +386,8 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public long get(ValueLayout.OfLong layout, long offset) {
-        return segment.get(layout, offset);
+        MemorySegment source = readable(offset, layout.byteSize());
+        return source.get(layout, readOffset(source, offset));
     }
 
     /**
@@ -374,7 +400,8 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public short get(ValueLayout.OfShort layout, long offset) {
-        return segment.get(layout, offset);
+        MemorySegment source = readable(offset, layout.byteSize());
+        return source.get(layout, readOffset(source, offset));
     }
 
     /**
@@ -387,7 +414,7 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public MemoryAddress getAtIndex(ValueLayout.OfAddress layout, long index) {
-        return segment.getAtIndex(layout, index);
+        return get(checkElementAlignment(layout), index * layout.byteSize());
     }
 
     /**
@@ -400,7 +427,7 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public char getAtIndex(ValueLayout.OfChar layout, long index) {
-        return segment.getAtIndex(layout, index);
+        return get(checkElementAlignment(layout), index * layout.byteSize());
     }
 
     /**
@@ -413,7 +440,7 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public double getAtIndex(ValueLayout.OfDouble layout, long index) {
-        return segment.getAtIndex(layout, index);
+        return get(checkElementAlignment(layout), index * layout.byteSize());
     }
 
     /**
@@ -426,7 +453,7 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public float getAtIndex(ValueLayout.OfFloat layout, long index) {
-        return segment.getAtIndex(layout, index);
+        return get(checkElementAlignment(layout), index * layout.byteSize());
     }
 
     /**
@@ -439,7 +466,7 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public int getAtIndex(ValueLayout.OfInt layout, long index) {
-        return segment.getAtIndex(layout, index);
+        return get(checkElementAlignment(layout), index * layout.byteSize());
     }
 
     /**
@@ -452,7 +479,7 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public long getAtIndex(ValueLayout.OfLong layout, long index) {
-        return segment.getAtIndex(layout, index);
+        return get(checkElementAlignment(layout), index * layout.byteSize());
     }
 
     /**
@@ -465,7 +492,7 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public short getAtIndex(ValueLayout.OfShort layout, long index) {
-        return segment.getAtIndex(layout, index);
+        return get(checkElementAlignment(layout), index * layout.byteSize());
     }
 
     /**
@@ -477,7 +504,8 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the layout
      */
     public AllocationAddress getReference(long offset) {
-        return heap.reformAddress(segment.get(ADDRESS, offset));
+        MemorySegment source = readable(offset, ADDRESS.byteSize());
+        return heap.reformAddress(source.get(ADDRESS, readOffset(source, offset)));
     }
 
     /**
@@ -489,7 +517,7 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the layout
      */
     public AllocationAddress getReferenceAtIndex(long index) {
-        return heap.reformAddress(segment.getAtIndex(ADDRESS, index));
+        return getReference(index * ADDRESS.byteSize());
     }
 
     /**
@@ -502,7 +530,15 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
 	public void set(ValueLayout.OfAddress layout, long offset, Addressable value) {
-		heap.setAtOffset((s) -> segment.set(layout, offset, value), layout.byteSize(), segment, offset);
+		MemorySegment target = heap.beginWrite(segment, offset, layout.byteSize());
+		try {
+			target.set(layout, HighLevelHeap.targetOffset(segment, target, offset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, offset, layout.byteSize());
 	}
 
     /**
@@ -515,7 +551,15 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
 	public void set(ValueLayout.OfBoolean layout, long offset, boolean value) {
-		heap.setAtOffset((s) -> segment.set(layout, offset, value), layout.byteSize(), segment, offset);
+		MemorySegment target = heap.beginWrite(segment, offset, layout.byteSize());
+		try {
+			target.set(layout, HighLevelHeap.targetOffset(segment, target, offset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, offset, layout.byteSize());
 	}
 
     /**
@@ -528,7 +572,15 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
 	public void set(ValueLayout.OfByte layout, long offset, byte value) {
-		heap.setAtOffset((s) -> segment.set(layout, offset, value), layout.byteSize(), segment, offset);
+		MemorySegment target = heap.beginWrite(segment, offset, layout.byteSize());
+		try {
+			target.set(layout, HighLevelHeap.targetOffset(segment, target, offset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, offset, layout.byteSize());
 	}
 
     /**
@@ -541,7 +593,15 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
 	public void set(ValueLayout.OfChar layout, long offset, char value) {
-		heap.setAtOffset((s) -> segment.set(layout, offset, value), layout.byteSize(), segment, offset);
+		MemorySegment target = heap.beginWrite(segment, offset, layout.byteSize());
+		try {
+			target.set(layout, HighLevelHeap.targetOffset(segment, target, offset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, offset, layout.byteSize());
 	}
 
     /**
@@ -554,7 +614,15 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
 	public void set(ValueLayout.OfDouble layout, long offset, double value) {
-		heap.setAtOffset((s) -> segment.set(layout, offset, value), layout.byteSize(), segment, offset);
+		MemorySegment target = heap.beginWrite(segment, offset, layout.byteSize());
+		try {
+			target.set(layout, HighLevelHeap.targetOffset(segment, target, offset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, offset, layout.byteSize());
 	}
 
     /**
@@ -567,7 +635,15 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
 	public void set(ValueLayout.OfFloat layout, long offset, float value) {
-		heap.setAtOffset((s) -> segment.set(layout, offset, value), layout.byteSize(), segment, offset);
+		MemorySegment target = heap.beginWrite(segment, offset, layout.byteSize());
+		try {
+			target.set(layout, HighLevelHeap.targetOffset(segment, target, offset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, offset, layout.byteSize());
 	}
 
     /**
@@ -580,7 +656,15 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
 	public void set(ValueLayout.OfInt layout, long offset, int value) {
-		heap.setAtOffset((s) -> segment.set(layout, offset, value), layout.byteSize(), segment, offset);
+		MemorySegment target = heap.beginWrite(segment, offset, layout.byteSize());
+		try {
+			target.set(layout, HighLevelHeap.targetOffset(segment, target, offset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, offset, layout.byteSize());
 	}
 
     /**
@@ -593,7 +677,15 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
 	public void set(ValueLayout.OfLong layout, long offset, long value) {
-		heap.setAtOffset((s) -> segment.set(layout, offset, value), layout.byteSize(), segment, offset);
+		MemorySegment target = heap.beginWrite(segment, offset, layout.byteSize());
+		try {
+			target.set(layout, HighLevelHeap.targetOffset(segment, target, offset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, offset, layout.byteSize());
 	}
 
     /**
@@ -606,7 +698,15 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
 	public void set(ValueLayout.OfShort layout, long offset, short value) {
-		heap.setAtOffset((s) -> segment.set(layout, offset, value), layout.byteSize(), segment, offset);
+		MemorySegment target = heap.beginWrite(segment, offset, layout.byteSize());
+		try {
+			target.set(layout, HighLevelHeap.targetOffset(segment, target, offset), value);
+		}
+		catch (Throwable t) {
+			heap.abortWrite(t);
+			throw t;
+		}
+		heap.endWrite(segment, offset, layout.byteSize());
 	}
 
     /**
@@ -619,7 +719,7 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
 	public void setAtIndex(ValueLayout.OfAddress layout, long index, Addressable value) {
-		heap.setAtOffset((s) -> segment.setAtIndex(layout, index, value), layout.byteSize(), segment, index * layout.byteSize());
+		set(checkElementAlignment(layout), index * layout.byteSize(), value);
 	}
 
     /**
@@ -632,7 +732,7 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
 	public void setAtIndex(ValueLayout.OfChar layout, long index, char value) {
-		heap.setAtOffset((s) -> segment.setAtIndex(layout, index, value), layout.byteSize(), segment, index * layout.byteSize());
+		set(checkElementAlignment(layout), index * layout.byteSize(), value);
 	}
 
     /**
@@ -645,7 +745,7 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
 	public void setAtIndex(ValueLayout.OfDouble layout, long index, double value) {
-		heap.setAtOffset((s) -> segment.setAtIndex(layout, index, value), layout.byteSize(), segment, index * layout.byteSize());
+		set(checkElementAlignment(layout), index * layout.byteSize(), value);
 	}
 
     /**
@@ -658,7 +758,7 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
 	public void setAtIndex(ValueLayout.OfFloat layout, long index, float value) {
-		heap.setAtOffset((s) -> segment.setAtIndex(layout, index, value), layout.byteSize(), segment, index * layout.byteSize());
+		set(checkElementAlignment(layout), index * layout.byteSize(), value);
 	}
 
     /**
@@ -671,7 +771,7 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
 	public void setAtIndex(ValueLayout.OfInt layout, long index, int value) {
-		heap.setAtOffset((s) -> segment.setAtIndex(layout, index, value), layout.byteSize(), segment, index * layout.byteSize());
+		set(checkElementAlignment(layout), index * layout.byteSize(), value);
 	}
 
     /**
@@ -684,7 +784,7 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
 	public void setAtIndex(ValueLayout.OfLong layout, long index, long value) {
-		heap.setAtOffset((s) -> segment.setAtIndex(layout, index, value), layout.byteSize(), segment, index * layout.byteSize());
+		set(checkElementAlignment(layout), index * layout.byteSize(), value);
 	}
 
     /**
@@ -697,7 +797,7 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
 	public void setAtIndex(ValueLayout.OfShort layout, long index, short value) {
-		heap.setAtOffset((s) -> segment.setAtIndex(layout, index, value), layout.byteSize(), segment, index * layout.byteSize());
+		set(checkElementAlignment(layout), index * layout.byteSize(), value);
 	}
 
     /**
@@ -709,7 +809,8 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public void setReference(long offset, Allocation reference) {
-		heap.setAtOffset((s) -> segment.set(ADDRESS, offset, heap.segmentAddress(reference.segment())), ADDRESS.byteSize(), segment, offset);
+		MemoryAddress address = heap.segmentAddress(reference.segment());
+		set(ADDRESS, offset, address);
     }
 
     /**
@@ -721,7 +822,8 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public void setReference(long offset, AllocationAddress reference) {
-		heap.setAtOffset((s) -> segment.set(ADDRESS, offset, heap.transformAddress(reference)), ADDRESS.byteSize(), segment, offset);
+		MemoryAddress address = heap.transformAddress(reference);
+		set(ADDRESS, offset, address);
     }
 
     /**
@@ -733,7 +835,8 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public void setReferenceAtIndex(long index, Allocation reference) {
-		heap.setAtOffset((s) -> segment.setAtIndex(ADDRESS, index, heap.segmentAddress(reference.segment())), ADDRESS.byteSize(), segment, index * ADDRESS.byteSize());
+		MemoryAddress address = heap.segmentAddress(reference.segment());
+		set(ADDRESS, index * ADDRESS.byteSize(), address);
     }
 
     /**
@@ -745,7 +848,8 @@ public class Allocation {
 	 * @throws IllegalArgumentException if the dereference operation is incompatible with the alignment constraints in the {@code layout}
      */
     public void setReferenceAtIndex(long index, AllocationAddress reference) {
-		heap.setAtOffset((s) -> segment.setAtIndex(ADDRESS, index, heap.transformAddress(reference)), ADDRESS.byteSize(), segment, index * ADDRESS.byteSize());
+		MemoryAddress address = heap.transformAddress(reference);
+		set(ADDRESS, index * ADDRESS.byteSize(), address);
     }
 
     /**
@@ -755,7 +859,7 @@ public class Allocation {
 	 * @throws IllegalStateException if the allocation is not in a valid state for use
      */
     public byte[] toArray(ValueLayout.OfByte elementLayout) {
-        return segment.toArray(elementLayout);
+        return readable(0, segment.byteSize()).toArray(elementLayout);
     }
 
     /**
@@ -765,7 +869,7 @@ public class Allocation {
 	 * @throws IllegalStateException if the allocation is not in a valid state for use
      */
     public char[] toArray(ValueLayout.OfChar elementLayout) {
-        return segment.toArray(elementLayout);
+        return readable(0, segment.byteSize()).toArray(elementLayout);
     }
 
     /**
@@ -775,7 +879,7 @@ public class Allocation {
 	 * @throws IllegalStateException if the allocation is not in a valid state for use
      */
     public double[] toArray(ValueLayout.OfDouble elementLayout) {
-        return segment.toArray(elementLayout);
+        return readable(0, segment.byteSize()).toArray(elementLayout);
     }
 
     /**
@@ -785,7 +889,7 @@ public class Allocation {
 	 * @throws IllegalStateException if the allocation is not in a valid state for use
      */
     public float[] toArray(ValueLayout.OfFloat elementLayout) {
-        return segment.toArray(elementLayout);
+        return readable(0, segment.byteSize()).toArray(elementLayout);
     }
 
     /**
@@ -795,7 +899,7 @@ public class Allocation {
 	 * @throws IllegalStateException if the allocation is not in a valid state for use
      */
     public int[] toArray(ValueLayout.OfInt elementLayout) {
-        return segment.toArray(elementLayout);
+        return readable(0, segment.byteSize()).toArray(elementLayout);
     }
 
     /**
@@ -805,7 +909,7 @@ public class Allocation {
 	 * @throws IllegalStateException if the allocation is not in a valid state for use
      */
     public long[] toArray(ValueLayout.OfLong elementLayout) {
-        return segment.toArray(elementLayout);
+        return readable(0, segment.byteSize()).toArray(elementLayout);
     }
 
     /**
@@ -815,7 +919,7 @@ public class Allocation {
 	 * @throws IllegalStateException if the allocation is not in a valid state for use
      */
     public short[] toArray(ValueLayout.OfShort elementLayout) {
-        return segment.toArray(elementLayout);
+        return readable(0, segment.byteSize()).toArray(elementLayout);
     }
 
     @Override
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2022 Intel Corporation
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ *
+ */
+
+package com.intel.pmem.pmul;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.MemoryLayout.PathElement;
+import jdk.incubator.foreign.MemoryLayout;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import static jdk.incubator.foreign.ValueLayout.*;
+
+/*
+ Per-thread allocation buffers for small allocations from a persistent heap.
+
+ Chunks of CHUNK_SIZE bytes are allocated from the underlying heap and carved into slots of
+ a single size class. Slot ownership is recorded in a bitmap in the chunk header and chunks are
+ linked from the heap metadata, so they are found again when the heap is reopened.
+
+ A chunk is owned by at most one thread at a time and only its owner claims slots from it, so
+ threads allocating the same size never touch the same chunk. The owner reserves the free slots
+ of one bitmap word at once, from a volatile copy of the word, and zeroes them together. The bit of
+ a slot is set and persisted only as the slot is handed out, so the bitmap never marks a slot used
+ that no allocation returned: reserved slots a thread has not handed out when it ends, or when the
+ heap is closed, are simply free when the chunk is next reserved from. A thread gives up a chunk
+ when it has no free words left; chunks of threads that have ended can be taken over by other
+ threads. Frees may come from any thread and clear their bit with an atomic update that is
+ persisted immediately.
+
+ Bitmap words are never added to a transaction, so transactional allocations made within an
+ active transaction are not served from buffers; they are left to pmemobj_tx_zalloc, which
+ rolls them back on recovery. A slot released by a transactional free is only cleared once the
+ transaction commits; until then a second free of the slot is rejected. An interrupted
+ transaction can leak the slots it freed, but cannot leave a referenced slot marked free.
+
+ A chunk is reserved from the heap and published together with the store that links it from
+ the heap metadata, so an interruption cannot leave an allocated chunk that is not linked.
+*/
+final class AllocationBuffers {
+    static final long CHUNK_SIZE = 256 * 1024;
+    static final long MAX_ALLOCATION_SIZE = 256;
+    private static final long GRANULE = 16;
+    private static final int SIZE_CLASSES = (int)(MAX_ALLOCATION_SIZE / GRANULE);
+    private static final long CHUNK_MAGIC = 0x706d756c63686b31L;
+
+    static final MemoryLayout header = MemoryLayout.structLayout(
+        JAVA_LONG.withName("magic"),
+        JAVA_LONG.withName("slot_size"),
+        JAVA_LONG.withName("slot_count"),
+        ADDRESS.withName("next")
+    );
+    private static final VarHandle MAGIC = header.varHandle(PathElement.groupElement("magic"));
+    private static final VarHandle SLOT_SIZE = header.varHandle(PathElement.groupElement("slot_size"));
+    private static final VarHandle SLOT_COUNT = header.varHandle(PathElement.groupElement("slot_count"));
+    private static final VarHandle NEXT = header.varHandle(PathElement.groupElement("next"));
+    private static final VarHandle WORD = JAVA_LONG.arrayElementVarHandle();
+
+    private final PersistentHeap heap;
+    private final ConcurrentSkipListMap<Long, Chunk> chunks;
+    private final ThreadLocal<Reservation[]> reservations;
+    // slots freed by transactions that have not yet ended
+    private final Set<Long> pendingFrees;
+    private volatile boolean enabled;
+
+    AllocationBuffers(PersistentHeap heap) {
+        this.heap = heap;
+        this.chunks = new ConcurrentSkipListMap<>();
+        this.pendingFrees = ConcurrentHashMap.newKeySet();
+        this.reservations = ThreadLocal.withInitial(() -> {
+            Reservation[] reservations = new Reservation[SIZE_CLASSES];
+            for (int i = 0; i < SIZE_CLASSES; i++) reservations[i] = new Reservation();
+            return reservations;
+        });
+        MemoryAddress next = heap.metadata.getAllocationChunks();
+        while (!next.equals(MemoryAddress.NULL)) {
+            MemorySegment segment = heap.createSegment(heap.reformAddress(next), CHUNK_SIZE, ResourceScope.globalScope());
+            if ((long)MAGIC.get(segment) != CHUNK_MAGIC) throw new HeapException("Failed to open Heap. Allocation buffer corrupted");
+            Chunk chunk = new Chunk(segment, (long)SLOT_SIZE.get(segment), (long)SLOT_COUNT.get(segment));
+            chunks.put(chunk.base, chunk);
+            next = (MemoryAddress)NEXT.get(segment);
+        }
+    }
+
+    static boolean hasChunks(LowLevelHeap heap) {
+        return !heap.metadata.getAllocationChunks().equals(MemoryAddress.NULL);
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // returns null if the allocation is not served from a buffer
+    MemorySegment allocate(long byteSize, boolean transactional, ResourceScope scope) {
+        if (!enabled || byteSize <= 0 || byteSize > MAX_ALLOCATION_SIZE) return null;
+        if (transactional && Transaction.isActive()) return null;
+        // sizes with a registered allocation class are left to that class
+        if (heap.hasAllocationClass(byteSize)) return null;
+        int sizeClass = (int)((byteSize - 1) / GRANULE);
+        Reservation reservation = reservations.get()[sizeClass];
+        long address = claim(reservation, sizeClass);
+        if (address == 0) return null;
+        return heap.createSegment(MemoryAddress.ofLong(address), byteSize, scope);
+    }
+
+    // returns false if the address was not served from a buffer
+    boolean free(MemoryAddress address, boolean transactional) {
+        if (chunks.isEmpty()) return false;
+        long slotAddress = address.toRawLongValue();
+        Map.Entry<Long, Chunk> entry = chunks.floorEntry(slotAddress);
+        if (entry == null || !entry.getValue().contains(slotAddress)) return false;
+        Chunk chunk = entry.getValue();
+        chunk.checkAllocated(slotAddress);
+        if (transactional && Transaction.isActive()) {
+            if (!pendingFrees.add(slotAddress)) throw notAllocated(slotAddress);
+            Transaction.onCommit(() -> {
+                pendingFrees.remove(slotAddress);
+                chunk.release(slotAddress);
+            });
+            Transaction.onAbort(() -> pendingFrees.remove(slotAddress));
+        }
+        else {
+            if (pendingFrees.contains(slotAddress)) throw notAllocated(slotAddress);
+            chunk.release(slotAddress);
+        }
+        return true;
+    }
+
+    private static HeapException notAllocated(long address) {
+        return new HeapException("Failed to free memory. Memory at address " + address + " is not allocated");
+    }
+
+    // the number of slots marked allocated in the bitmaps of all chunks
+    long allocatedSlots() {
+        long allocated = 0;
+        for (Chunk chunk : chunks.values()) allocated += chunk.slotCount - chunk.available();
+        return allocated;
+    }
+
+    // returns the address of a zeroed slot taken from the thread's reservation, or 0 if no chunk has room
+    private long claim(Reservation reservation, int sizeClass) {
+        while (reservation.mask == 0) {
+            if (reservation.chunk != null && reservation.chunk.reserve(reservation)) break;
+            Chunk next = nextChunk(sizeClass);
+            if (reservation.chunk != null) reservation.chunk.disown();
+            reservation.chunk = next;
+            if (next == null) return 0;
+        }
+        long bit = Long.numberOfTrailingZeros(reservation.mask);
+        reservation.mask &= reservation.mask - 1;
+        Chunk chunk = reservation.chunk;
+        chunk.mark(reservation.word, bit);
+        return chunk.base + (reservation.word * Long.SIZE + bit) * chunk.slotSize;
+    }
+
+    // returns a chunk of the size class now owned by the calling thread, creating one if none is free
+    private Chunk nextChunk(int sizeClass) {
+        long slotSize = (sizeClass + 1) * GRANULE;
+        for (Chunk chunk : chunks.values()) {
+            if (chunk.slotSize == slotSize && chunk.available() > 0 && chunk.own()) return chunk;
+        }
+        try {
+            return createChunk(slotSize);
+        }
+        catch (OutOfMemoryError e) {
+            return null;
+        }
+    }
+
+    // Chunks are reserved and linked outside of any transaction so that they outlive an aborted
+    // transaction that happened to trigger their creation. The chunk and the store of the list
+    // head are published in one action, so the chunk is either linked or not allocated at all.
+    private synchronized Chunk createChunk(long slotSize) {
+        MemorySegment actions = NativeScratch.pushActions(2);
+        try {
+            MemorySegment segment = heap.reserveSegment(CHUNK_SIZE, actions.asSlice(0, PersistentHeap.ACTION_SIZE), ResourceScope.globalScope());
+            Chunk chunk = new Chunk(segment, slotSize, slotCount(slotSize));
+            try {
+                MAGIC.set(segment, CHUNK_MAGIC);
+                SLOT_SIZE.set(segment, slotSize);
+                SLOT_COUNT.set(segment, chunk.slotCount);
+                NEXT.set(segment, heap.metadata.getAllocationChunks());
+                chunk.format();
+                heap.flush(segment, 0, chunk.base - segment.address().toRawLongValue());
+                if (heap.metadata.getVersion() < LowLevelHeap.HEAP_VERSION) {
+                    heap.metadata.setVersion(LowLevelHeap.HEAP_VERSION);
+                    heap.flush(heap.metadata.getSegment());
+                }
+                heap.setValue(actions.asSlice(PersistentHeap.ACTION_SIZE, PersistentHeap.ACTION_SIZE), heap.metadata.allocationChunksAsSlice(), heap.transformAddress(segment.address()).toRawLongValue());
+            }
+            catch (Throwable t) {
+                heap.cancel(actions, 1);
+                throw t;
+            }
+            try {
+                heap.publish(actions, 2, false);
+            }
+            catch (Throwable t) {
+                heap.cancel(actions, 2);
+                throw t;
+            }
+            chunk.own();
+            chunks.put(chunk.base, chunk);
+            return chunk;
+        }
+        finally {
+            NativeScratch.popActions();
+        }
+    }
+
+    static long slotCount(long slotSize) {
+        long count = (CHUNK_SIZE - header.byteSize()) * Byte.SIZE / (slotSize * Byte.SIZE + 1);
+        while (slotsOffset(count) + count * slotSize > CHUNK_SIZE) count--;
+        return count;
+    }
+
+    static long slotsOffset(long slotCount) {
+        long bitmapEnd = header.byteSize() + wordCount(slotCount) * Long.BYTES;
+        return (bitmapEnd + 63) & ~63L;
+    }
+
+    static long wordCount(long slotCount) {
+        return (slotCount + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    // the slots of one bitmap word reserved by a thread and not yet handed out
+    static final class Reservation {
+        Chunk chunk;
+        long word;
+        long mask;
+    }
+
+    static final class Chunk {
+        private static final VarHandle OWNER;
+        final MemorySegment bitmap;
+        final MemorySegment slots;
+        final long base;
+        final long end;
+        final long slotSize;
+        final long slotCount;
+        private final long wordCount;
+        private final AtomicLong available;
+        private volatile Thread owner;
+        // only read and written by the owner
+        private long hint;
+
+        static {
+            try {
+                OWNER = MethodHandles.lookup().findVarHandle(Chunk.class, "owner", Thread.class);
+            }
+            catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        Chunk(MemorySegment segment, long slotSize, long slotCount) {
+            this.slotSize = slotSize;
+            this.slotCount = slotCount;
+            this.wordCount = wordCount(slotCount);
+            this.bitmap = segment.asSlice(header.byteSize(), wordCount * Long.BYTES);
+            this.slots = segment.asSlice(slotsOffset(slotCount), slotCount * slotSize);
+            this.base = slots.address().toRawLongValue();
+            this.end = base + slots.byteSize();
+            long used = 0;
+            for (long i = 0; i < wordCount; i++) used += Long.bitCount((long)WORD.get(bitmap, i));
+            this.available = new AtomicLong(wordCount * Long.SIZE - used);
+        }
+
+        // marks bits past the last slot as allocated so they are never claimed
+        void format() {
+            bitmap.fill((byte)0);
+            long tail = slotCount % Long.SIZE;
+            if (tail != 0) WORD.set(bitmap, wordCount - 1, -1L << tail);
+            available.set(slotCount);
+        }
+
+        boolean contains(long address) {
+            return address >= base && address < end;
+        }
+
+        long available() {
+            return available.get();
+        }
+
+        // makes the calling thread the owner if the chunk has none or its owner has ended
+        boolean own() {
+            Thread current = owner;
+            if (current != null && current.isAlive()) return false;
+            return OWNER.compareAndSet(this, current, Thread.currentThread());
+        }
+
+        void disown() {
+            owner = null;
+        }
+
+        // Reserves the free slots of the next bitmap word that has any and zeroes them; their bits are
+        // set by mark as they are handed out. Only the owner sets bits, so the slots stay free until
+        // then. Returns false if the chunk is full.
+        boolean reserve(Reservation reservation) {
+            if (available.get() <= 0) return false;
+            for (long n = 0; n < wordCount; n++) {
+                long index = (hint + n) % wordCount;
+                long word = (long)WORD.getVolatile(bitmap, index);
+                if (word == -1L) continue;
+                hint = index;
+                long mask = ~word;
+                zero(index, mask);
+                reservation.word = index;
+                reservation.mask = mask;
+                return true;
+            }
+            return false;
+        }
+
+        // marks a reserved slot allocated; the flush also orders the zeroing of its slots before the bit
+        void mark(long index, long bit) {
+            WORD.getAndBitwiseOr(bitmap, index, 1L << bit);
+            PersistentHeap.flush0(bitmap, index * Long.BYTES, Long.BYTES);
+            available.decrementAndGet();
+        }
+
+        // zeroes the slots of a bitmap word selected by mask, flushing each contiguous run once
+        private void zero(long index, long mask) {
+            while (mask != 0) {
+                long first = Long.numberOfTrailingZeros(mask);
+                long length = Long.numberOfTrailingZeros(~(mask >>> first));
+                long offset = (index * Long.SIZE + first) * slotSize;
+                slots.asSlice(offset, length * slotSize).fill((byte)0);
+                PersistentHeap.flushNoDrain0(base + offset, length * slotSize);
+                mask &= (length == Long.SIZE) ? 0 : ~(((1L << length) - 1) << first);
+            }
+        }
+
+        void checkAllocated(long address) {
+            long offset = address - base;
+            if (offset % slotSize != 0) throw new HeapException("Failed to free memory. Invalid address " + address);
+            long slot = offset / slotSize;
+            long word = (long)WORD.getVolatile(bitmap, slot / Long.SIZE);
+            if ((word & (1L << (slot % Long.SIZE))) == 0) throw notAllocated(address);
+        }
+
+        void release(long address) {
+            long slot = (address - base) / slotSize;
+            long index = slot / Long.SIZE;
+            WORD.getAndBitwiseAnd(bitmap, index, ~(1L << (slot % Long.SIZE)));
+            PersistentHeap.flush0(bitmap, index * Long.BYTES, Long.BYTES);
+            available.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/* 
+ * Copyright (C) 2022 Intel Corporation
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ * 
+ */
+
+package com.intel.pmem.pmul;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ValueLayout;
+
+// A transactional heap whose element writes are held in a per-thread RedoBuffer and published to 
+// the transaction's redo log when the transaction body completes. Bulk operations write in place 
+// under undo snapshots, as in TransactionalHeapImpl, after writing back any buffered words they cover.
+class BufferedHeapImpl extends TransactionalHeapImpl {
+    private final ThreadLocal<RedoBuffer> buffers;
+
+    public BufferedHeapImpl(Path path, long size) throws IOException {
+        this(PersistentHeap.create(path, size, Heap.Kind.BUFFERED), true);
+    }
+
+    public BufferedHeapImpl(Path path) throws IOException {
+        this(PersistentHeap.create(path, Heap.Kind.BUFFERED), true);
+    }
+
+    public BufferedHeapImpl(LowLevelHeap lowLevelHeap) throws IOException {
+        this(lowLevelHeap, false);
+    }
+
+    private BufferedHeapImpl(LowLevelHeap lowLevelHeap, boolean create) throws IOException {
+        super(Heap.Kind.BUFFERED, lowLevelHeap, create);
+        this.buffers = ThreadLocal.withInitial(() -> new RedoBuffer((PersistentHeap)lowLevelHeap));
+    }
+
+    @Override
+    public void execute(Allocation allocation, Runnable body) {
+        Transaction.run(lowLevelHeap, () -> {
+            MemorySegment segment = allocation.segment();
+            buffers.get().materialize(segment, 0, segment.byteSize());
+            Transaction.addToTransaction(segment, 0, segment.byteSize());
+            beginInFlightSegment(segment);
+            try {
+                body.run();
+            }
+            finally {
+                endInFlightSegment();
+            }
+        });
+    }
+
+    @Override
+    public <T> T execute(Allocation allocation, Supplier<T> body) {
+        return Transaction.run(lowLevelHeap, () -> {
+            MemorySegment segment = allocation.segment();
+            buffers.get().materialize(segment, 0, segment.byteSize());
+            Transaction.addToTransaction(segment, 0, segment.byteSize());
+            return body.get();
+        });
+    }
+
+    @Override
+    public void copy(Allocation srcAllocation, Allocation dstAllocation) {
+        Transaction.run(lowLevelHeap, () -> {
+            MemorySegment srcSegment = srcAllocation.segment();
+            MemorySegment dstSegment = dstAllocation.segment();
+            RedoBuffer buffer = buffers.get();
+            buffer.materialize(dstSegment, 0, dstSegment.byteSize());
+            if (srcAllocation.heap() == this) srcSegment = buffer.view(srcSegment, 0, srcSegment.byteSize());
+            if (!segmentIsInFlight(dstSegment)) Transaction.addToTransaction(dstSegment, 0, dstSegment.byteSize());
+            dstSegment.copyFrom(srcSegment);
+        });
+    }
+
+    @Override
+    public void copyToHeap(Allocation srcAllocation, long srcOffset, Allocation dstAllocation, long dstOffset, long length) {
+        Transaction.run(lowLevelHeap, () -> {
+            MemorySegment srcSegment = srcAllocation.segment();
+            MemorySegment dstSegment = dstAllocation.segment();
+            RedoBuffer buffer = buffers.get();
+            buffer.materialize(dstSegment, dstOffset, length);
+            if (srcAllocation.heap() == this) srcSegment = buffer.view(srcSegment, srcOffset, length);
+            if (!segmentIsInFlight(dstSegment)) Transaction.addToTransaction(dstSegment, dstOffset, length);
+            MemorySegment.copy(srcSegment, srcOffset, dstSegment, dstOffset, length);
+        });
+    }
+
+    @Override
+    public void copyToHeap(Allocation srcAllocation, ValueLayout srcElementLayout, long srcOffset, Allocation dstAllocation, ValueLayout dstElementLayout, long dstOffset, long elementCount) {
+        Transaction.run(lowLevelHeap, () -> {
+            MemorySegment srcSegment = srcAllocation.segment();
+            MemorySegment dstSegment = dstAllocation.segment();
+            RedoBuffer buffer = buffers.get();
+            buffer.materialize(dstSegment, dstOffset, dstElementLayout.byteSize() * elementCount);
+            if (srcAllocation.heap() == this) srcSegment = buffer.view(srcSegment, srcOffset, srcElementLayout.byteSize() * elementCount);
+            if (!segmentIsInFlight(dstSegment)) Transaction.addToTransaction(dstSegment, dstOffset, dstElementLayout.byteSize() * elementCount);
+            MemorySegment.copy(srcSegment, srcElementLayout, srcOffset, dstSegment, dstElementLayout, dstOffset, elementCount);
+        });
+    }
+
+    @Override
+    MemorySegment beginWrite(MemorySegment segment, long byteOffset, long elementSize) {
+        Transaction.begin(lowLevelHeap);
+        try {
+            return segmentIsInFlight(segment) ? segment : buffers.get().beginWrite(segment, byteOffset, elementSize);
+        }
+        catch (Throwable t) {
+            Transaction.fail(t);
+            throw t;
+        }
+    }
+
+    @Override
+    void endWrite(MemorySegment segment, long byteOffset, long elementSize) {
+        try {
+            if (!segmentIsInFlight(segment)) buffers.get().endWrite(segment, byteOffset, elementSize);
+        }
+        catch (Throwable t) {
+            Transaction.fail(t);
+            throw t;
+        }
+        Transaction.end();
+    }
+
+    @Override
+    MemorySegment readSegment(MemorySegment segment, long offset, long byteSize) {
+        RedoBuffer buffer = buffers.get();
+        return buffer.isEmpty() ? segment : buffer.view(segment, offset, byteSize);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2022 Intel Corporation
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ *
+ */
+
+package com.intel.pmem.pmul;
+
+import java.util.Arrays;
+
+/*
+ Flushes deferred by one thread's batches on one durable heap.
+
+ Within a scope, each write to persistent memory records the cache lines it dirtied instead of
+ persisting them. Ranges are kept sorted, and overlapping or adjacent ranges are merged as they are
+ recorded, so a line written many times is flushed once. When the outermost scope exits, each range
+ is flushed without a fence and a single drain makes all of them persistent. Large copies and fills 
+ within a scope bypass the caches and only record that the drain is needed.
+*/
+final class DeferredFlushes {
+    private static final long LINE = 64;
+
+    private long[] starts;
+    private long[] ends;
+    private int count;
+    private int depth;
+    private boolean drainPending;
+
+    DeferredFlushes() {
+        this.starts = new long[16];
+        this.ends = new long[16];
+    }
+
+    boolean isActive() {
+        return depth > 0;
+    }
+
+    // number of recorded ranges not yet flushed
+    int rangeCount() {
+        return count;
+    }
+
+    void enter() {
+        depth++;
+    }
+
+    // returns true if the outermost scope exited and the recorded ranges must be flushed
+    boolean exit() {
+        return --depth == 0;
+    }
+
+    void record(long address, long byteCount) {
+        if (byteCount <= 0) return;
+        long start = address & ~(LINE - 1);
+        long end = (address + byteCount + LINE - 1) & ~(LINE - 1);
+        if (count > 0 && start <= ends[count - 1] && start >= starts[count - 1]) {
+            if (end > ends[count - 1]) ends[count - 1] = end;
+            return;
+        }
+        // first range that ends at or after start, the new range merges with it and any that follow
+        // which start at or before end
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] < start) low = mid + 1;
+            else high = mid;
+        }
+        int last = low;
+        while (last < count && starts[last] <= end) last++;
+        if (last > low) {
+            starts[low] = Math.min(start, starts[low]);
+            ends[low] = Math.max(end, ends[last - 1]);
+            System.arraycopy(starts, last, starts, low + 1, count - last);
+            System.arraycopy(ends, last, ends, low + 1, count - last);
+            count -= last - low - 1;
+            return;
+        }
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        System.arraycopy(starts, low, starts, low + 1, count - low);
+        System.arraycopy(ends, low, ends, low + 1, count - low);
+        starts[low] = start;
+        ends[low] = end;
+        count++;
+    }
+
+    // records that bytes were written with non-temporal stores, which need the drain but no flush
+    void recordDrain() {
+        drainPending = true;
+    }
+
+    void flush() {
+        if (count == 0 && !drainPending) return;
+        try {
+            for (int i = 0; i < count; i++) PersistentHeap.flushNoDrain0(starts[i], ends[i] - starts[i]);
+            PersistentHeap.drain0();
+        }
+        finally {
+            count = 0;
+            drainPending = false;
+        }
+    }
+}
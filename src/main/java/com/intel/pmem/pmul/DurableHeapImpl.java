@@ -8,16 +8,24 @@
 package com.intel.pmem.pmul;
 
 import java.io.IOException;
-import java.lang.invoke.MethodHandle;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import jdk.incubator.foreign.MemorySegment;
 import jdk.incubator.foreign.ResourceScope;
 import jdk.incubator.foreign.ValueLayout;
 
+// A heap whose writes are persisted as they are made. Within batch, persisting is deferred to the 
+// end of the outermost batch call on the thread for this heap, where the dirtied cache lines are 
+// flushed once each and fenced once, see DeferredFlushes. Writes outside of any batch find that out from 
+// the thread's InFlightSegments, without looking up the deferred flushes. Copies and fills of at least NON_TEMPORAL_THRESHOLD bytes 
+// use non-temporal stores, so that bulk data does not pass through, and then get flushed from, the caches.
 class DurableHeapImpl extends HighLevelHeap implements Heap {
+    static final long NON_TEMPORAL_THRESHOLD = Long.getLong("com.intel.pmem.pmul.nonTemporalThreshold", 64 * 1024);
+    private final ThreadLocal<DeferredFlushes> deferredFlushes = ThreadLocal.withInitial(DeferredFlushes::new);
+    // threads with an open batch on this heap
+    private final AtomicInteger openBatches = new AtomicInteger();
 
     public DurableHeapImpl(Path path, long size) throws IOException {
         super(Heap.Kind.DURABLE, PersistentHeap.create(path, size, Heap.Kind.DURABLE), true); 
@@ -33,7 +41,7 @@ class DurableHeapImpl extends HighLevelHeap implements Heap {
 
     @Override
     public Allocation allocate(long byteSize, ResourceScope scope) {
-        return super.createAllocation(lowLevelHeap.allocateSegment(byteSize, false, scope));
+        return super.createAllocation(allocateSegment(byteSize, false, scope));
     }
 
     @Override
@@ -44,20 +52,34 @@ class DurableHeapImpl extends HighLevelHeap implements Heap {
     private Allocation initializeAllocation(long byteSize, ResourceScope scope, Consumer<Allocation> initializer) {
         Allocation allocation = allocate(byteSize, scope);
         initializeAllocation(allocation, initializer);
-        lowLevelHeap.flush(allocation.segment(), 0, allocation.segment().byteSize());
+        flush(allocation.segment(), 0, allocation.segment().byteSize());
         return allocation;
     }
 
     private Allocation initializeAllocation(Allocation allocation, Consumer<Allocation> initializer) {
         beginInFlightSegment(allocation.segment());
-        initializer.accept(allocation);
-        endInFlightSegment();
+        try {
+            initializer.accept(allocation);
+        }
+        finally {
+            endInFlightSegment();
+        }
         return allocation;
     }
 
+    @Override
+    public Allocation[] allocateAll(long[] byteSizes, ResourceScope scope) {
+        return createAllocations(lowLevelHeap.allocateSegments(byteSizes, false, scope));
+    }
+
+    @Override
+    public Allocation allocateReserved(long byteSize, ResourceScope scope, Consumer<Allocation> initializer, Allocation parent, long referenceOffset) {
+        return reserveAllocation(byteSize, scope, initializer, parent, referenceOffset);
+    }
+
     @Override
     public void free(AllocationAddress address) {
-        lowLevelHeap.freeSegment(address.address(), false);
+        freeSegment(address.address(), false);
     }
 
     @Override
@@ -72,107 +94,170 @@ class DurableHeapImpl extends HighLevelHeap implements Heap {
         return ans;
     }        
 
-   @Override
+    @Override
     public void execute(Allocation allocation, Runnable body) {
         beginInFlightSegment(allocation.segment());
-        body.run();
-        endInFlightSegment();
-        lowLevelHeap.flush(allocation.segment(), 0, allocation.segment().byteSize());
+        try {
+            body.run();
+        }
+        finally {
+            endInFlightSegment();
+        }
+        flush(allocation.segment(), 0, allocation.segment().byteSize());
     }
 
     @Override
     public <T> T execute(Allocation allocation, Supplier<T> body) {
         T ans = body.get();
-        lowLevelHeap.flush(allocation.segment(), 0, allocation.segment().byteSize());
+        flush(allocation.segment(), 0, allocation.segment().byteSize());
         return ans;
     }
 
+    @Override
+    void batch(Runnable body) {
+        DeferredFlushes flushes = enterScope();
+        try {
+            body.run();
+        }
+        finally {
+            exitScope(flushes);
+        }
+    }
+
+    @Override
+    <T> T batch(Supplier<T> body) {
+        DeferredFlushes flushes = enterScope();
+        try {
+            return body.get();
+        }
+        finally {
+            exitScope(flushes);
+        }
+    }
+
+    private DeferredFlushes enterScope() {
+        DeferredFlushes flushes = deferredFlushes.get();
+        if (!flushes.isActive()) openBatches.incrementAndGet();
+        flushes.enter();
+        InFlightSegments.current().enterBatch();
+        return flushes;
+    }
+
+    // Writes made before a body throws are flushed as well, as they would have been outside of a scope.
+    private void exitScope(DeferredFlushes flushes) {
+        InFlightSegments.current().exitBatch();
+        if (!flushes.exit()) return;
+        try {
+            flushes.flush();
+        }
+        finally {
+            openBatches.decrementAndGet();
+        }
+    }
+
+    // the calling thread's deferred flushes for this heap
+    DeferredFlushes deferredFlushes() {
+        return deferredFlushes.get();
+    }
+
+    // Persists what this thread deferred before the heap is unmapped, in case it is closed within a batch. 
+    // A batch open on another thread would flush unmapped memory when it exits, so closing is rejected then.
+    @Override
+    void close() {
+        DeferredFlushes flushes = deferredFlushes.get();
+        int others = openBatches.get() - (flushes.isActive() ? 1 : 0);
+        if (others > 0) throw new IllegalStateException("Heap cannot be closed while another thread is within a batch");
+        flushes.flush();
+        super.close();
+    }
+
+    // persists the range now, or at the end of the current batch
+    private void flush(MemorySegment segment, long offset, long byteCount) {
+        flush(InFlightSegments.current(), segment, offset, byteCount);
+    }
+
+    // the deferred flushes are only looked up while the thread is within a batch
+    private void flush(InFlightSegments segments, MemorySegment segment, long offset, long byteCount) {
+        if (segments.inBatch()) {
+            DeferredFlushes flushes = deferredFlushes.get();
+            if (flushes.isActive()) {
+                ((PersistentHeap)lowLevelHeap).checkRange(segment, offset, byteCount);
+                flushes.record(segment.address().toRawLongValue() + offset, byteCount);
+                return;
+            }
+        }
+        lowLevelHeap.flush(segment, offset, byteCount);
+    }
+
     @Override
     public void copy(Allocation srcAllocation, Allocation dstAllocation) {
-        dstAllocation.segment().copyFrom(srcAllocation.segment());
-        if (!segmentIsInFlight(dstAllocation.segment())) lowLevelHeap.flush(dstAllocation.segment());
+        MemorySegment srcSegment = srcAllocation.segment();
+        MemorySegment dstSegment = dstAllocation.segment();
+        if (moveNonTemporal(srcSegment, 0, dstSegment, 0, srcSegment.byteSize())) return;
+        dstSegment.copyFrom(srcSegment);
+        if (!segmentIsInFlight(dstSegment)) flush(dstSegment, 0, dstSegment.byteSize());
     }
 
     @Override
     public void copyToHeap(Allocation srcAllocation, long srcOffset, Allocation dstAllocation, long dstOffset, long length) {
+        if (moveNonTemporal(srcAllocation.segment(), srcOffset, dstAllocation.segment(), dstOffset, length)) return;
         MemorySegment.copy(srcAllocation.segment(), srcOffset, dstAllocation.segment(), dstOffset, length);
-        if (!segmentIsInFlight(dstAllocation.segment())) lowLevelHeap.flush(dstAllocation.segment(), dstOffset, length);
+        if (!segmentIsInFlight(dstAllocation.segment())) flush(dstAllocation.segment(), dstOffset, length);
     }
 
     @Override
     public void copyToHeap(Allocation srcAllocation, ValueLayout srcElementLayout, long srcOffset, Allocation dstAllocation, ValueLayout dstElementLayout, long dstOffset, long elementCount) {
+        long byteCount = dstElementLayout.byteSize() * elementCount;
+        boolean sameOrder = srcElementLayout.byteSize() == dstElementLayout.byteSize() && (srcElementLayout.byteSize() == 1 || srcElementLayout.order() == dstElementLayout.order());
+        if (sameOrder && moveNonTemporal(srcAllocation.segment(), srcOffset, dstAllocation.segment(), dstOffset, byteCount)) return;
         MemorySegment.copy(srcAllocation.segment(), srcElementLayout, srcOffset, dstAllocation.segment(), dstElementLayout, dstOffset, elementCount);
-        if (!segmentIsInFlight(dstAllocation.segment())) lowLevelHeap.flush(dstAllocation.segment(), dstOffset, dstElementLayout.byteSize() * elementCount);
+        if (!segmentIsInFlight(dstAllocation.segment())) flush(dstAllocation.segment(), dstOffset, byteCount);
     }
 
     @Override
-    void set(Consumer<MemorySegment> body, MethodHandle byteOffsetHandle, long elementSize, MemorySegment segment) {
-        try {
-            body.accept(segment);
-            if (!segmentIsInFlight(segment)) lowLevelHeap.flush(segment, (long)byteOffsetHandle.invokeExact(), elementSize);
-        }
-        catch (RuntimeException e) {
-            throw e;
-        }
-        catch (Throwable t) {
-            throw new RuntimeException(t);
+    void fill(Allocation allocation, byte value) {
+        MemorySegment segment = allocation.segment();
+        if (segment.byteSize() < NON_TEMPORAL_THRESHOLD) {
+            super.fill(allocation, value);
+            return;
         }
+        PersistentHeap.fill0(segment, 0, value, segment.byteSize(), !deferDrain(segment));
     }
 
-    @Override
-    void set(Consumer<MemorySegment> body, MethodHandle byteOffsetHandle, long elementSize, MemorySegment segment, long index) {
-        try {
-            body.accept(segment);
-            if (!segmentIsInFlight(segment)) lowLevelHeap.flush(segment, (long)byteOffsetHandle.invokeExact(index), elementSize);
-        }
-        catch (RuntimeException e) {
-            throw e;
-        }
-        catch (Throwable t) {
-            throw new RuntimeException(t);
+    // Copies a large range from a native segment with non-temporal stores. Returns false, having copied 
+    // nothing, if the caller must copy through the caches instead.
+    private boolean moveNonTemporal(MemorySegment src, long srcOffset, MemorySegment dst, long dstOffset, long byteCount) {
+        if (byteCount < NON_TEMPORAL_THRESHOLD || !src.isNative()) return false;
+        PersistentHeap.move0(src, srcOffset, dst, dstOffset, byteCount, !deferDrain(dst));
+        return true;
+    }
+
+    // Returns true if the fence after a non-temporal write to segment is left to an enclosing execute or batch, 
+    // either because the segment is in flight and will be persisted as a whole or because a scope is active.
+    private boolean deferDrain(MemorySegment segment) {
+        InFlightSegments segments = InFlightSegments.current();
+        if (segments.inBatch()) {
+            DeferredFlushes flushes = deferredFlushes.get();
+            if (flushes.isActive()) {
+                flushes.recordDrain();
+                return true;
+            }
         }
+        return segments.contains(segment);
     }
 
     @Override
-    void set(Consumer<MemorySegment> body, MethodHandle byteOffsetHandle, long elementSize, MemorySegment segment, long index1, long index2) {
-        try {
-            body.accept(segment);
-            if (!segmentIsInFlight(segment)) lowLevelHeap.flush(segment, (long)byteOffsetHandle.invokeExact(index1, index2), elementSize);
-        }
-        catch (RuntimeException e) {
-            throw e;
-        }
-        catch (Throwable t) {
-            throw new RuntimeException(t);
-        }
+    MemorySegment beginWrite(MemorySegment segment, long byteOffset, long elementSize) {
+        return segment;
     }
 
     @Override
-    void set(Consumer<MemorySegment> body, MethodHandle byteOffsetHandle, long elementSize, Object... args) {
-        try {
-            MemorySegment segment= ((Allocation)args[0]).segment(); 
-            body.accept(segment);
-            if (!segmentIsInFlight(segment)) lowLevelHeap.flush(segment, (long)byteOffsetHandle.invokeWithArguments(Arrays.copyOfRange(args, 1, args.length - 1)), elementSize);
-        }
-        catch (RuntimeException e) {
-            throw e;
-        }
-        catch (Throwable t) {
-            throw new RuntimeException(t);
-        }
+    void endWrite(MemorySegment segment, long byteOffset, long elementSize) {
+        InFlightSegments segments = InFlightSegments.current();
+        if (!segments.contains(segment)) flush(segments, segment, byteOffset, elementSize);
     }
 
     @Override
-    void setAtOffset(Consumer<MemorySegment> body, long elementSize, MemorySegment segment, long offset) {
-        try {
-            body.accept(segment);
-            if (!segmentIsInFlight(segment)) lowLevelHeap.flush(segment, offset, elementSize);
-        }
-        catch (RuntimeException e) {
-            throw e;
-        }
-        catch (Throwable t) {
-            throw new RuntimeException(t);
-        }
+    void abortWrite(Throwable t) {
     }
 }
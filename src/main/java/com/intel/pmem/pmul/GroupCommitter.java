@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2022 Intel Corporation
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ *
+ */
+
+package com.intel.pmem.pmul;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+/*
+ Executes transactional bodies submitted from many threads in batches, one transaction per batch,
+ so that the cost of a commit is shared by all bodies in the batch.
+
+ Bodies run on the committer thread in submission order. A body's future is completed only after
+ the transaction containing it has committed. If a body throws, the batch transaction aborts, the
+ body's future completes exceptionally, and the rest of the batch is executed again without it;
+ bodies must therefore not have side effects outside of the heap.
+*/
+final class GroupCommitter {
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final Request<Void> SHUTDOWN = new Request<>(() -> null);
+
+    private final LowLevelHeap heap;
+    private final LinkedBlockingQueue<Request<?>> queue;
+    private final Thread thread;
+    private boolean closed;
+
+    GroupCommitter(LowLevelHeap heap) {
+        this.heap = heap;
+        this.queue = new LinkedBlockingQueue<>();
+        this.thread = new Thread(this::run, "pmul-group-commit");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Requests are queued under the lock that close takes to mark the committer closed, so every 
+    // request is either queued ahead of the shutdown marker or failed here.
+    <T> CompletableFuture<T> submit(Supplier<T> body) {
+        Request<T> request = new Request<>(body);
+        synchronized (this) {
+            if (!closed) {
+                queue.add(request);
+                return request.future;
+            }
+        }
+        request.future.completeExceptionally(new IllegalStateException("Heap is closed"));
+        return request.future;
+    }
+
+    // commits queued bodies, then stops the committer thread
+    void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            queue.add(SHUTDOWN);
+        }
+        if (Thread.currentThread() != thread) {
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+        Request<?> request;
+        while ((request = queue.poll()) != null) {
+            request.future.completeExceptionally(new IllegalStateException("Heap is closed"));
+        }
+    }
+
+    private void run() {
+        ArrayList<Request<?>> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            }
+            catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            running = !batch.remove(SHUTDOWN);
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    private void commit(ArrayList<Request<?>> batch) {
+        int[] current = new int[1];
+        while (!batch.isEmpty()) {
+            current[0] = -1;
+            try {
+                Transaction.run(heap, () -> {
+                    for (current[0] = 0; current[0] < batch.size(); current[0]++) batch.get(current[0]).execute();
+                    current[0] = -1;
+                });
+            }
+            catch (Throwable t) {
+                if (current[0] >= 0) {
+                    batch.remove(current[0]).future.completeExceptionally(t);
+                    continue;
+                }
+                for (Request<?> request : batch) request.future.completeExceptionally(t);
+                return;
+            }
+            for (Request<?> request : batch) request.complete();
+            return;
+        }
+    }
+
+    private static final class Request<T> {
+        final Supplier<T> body;
+        final CompletableFuture<T> future;
+        private T result;
+
+        Request(Supplier<T> body) {
+            this.body = body;
+            this.future = new CompletableFuture<>();
+        }
+
+        void execute() {
+            result = body.get();
+        }
+
+        void complete() {
+            future.complete(result);
+        }
+    }
+}
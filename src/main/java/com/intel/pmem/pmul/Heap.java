@@ -48,7 +48,10 @@ public interface Heap {
      * are interrupted, e.g., by a power failure. Such fail-safe writes
      * apply at a single set operation, bulk writes in a copy operation, 
      * or user supplied bodies in an Accessor::execute operation. The 
-     * heap can be reopened after a controlled or uncontrolled process exit.
+     * heap can be reopened after a controlled or uncontrolled process exit.<br>
+     * <b>Buffered</b>: A transactional heap that holds writes made within a 
+     * transaction in a per-thread buffer and writes them to the heap through 
+     * the transaction's redo log when the transaction commits.
      * */    
     public static final class Kind implements HeapKind {
         /**
@@ -58,7 +61,9 @@ public interface Heap {
         /**
          * Describes a heap which provides durable data as long as write operations
          * are not interrupted.  Under these conditions, the heap can be 
-         * reopened after a process exit.
+         * reopened after a process exit. Writes are persisted as they are made, 
+         * except within {@link Accessor#batch(Heap, Runnable)}, where they are 
+         * persisted together when the outermost call returns.
          */
         public static final Kind DURABLE = new Kind(2);
         /**
@@ -69,6 +74,15 @@ public interface Heap {
          * heap can be reopened after a controlled or uncontrolled process exit.
          */
         public static final Kind TRANSACTIONAL = new Kind(3);
+        /**
+         * Describes a heap with the same fail-safe guarantees as a TRANSACTIONAL heap 
+         * that buffers single-element writes made within a transaction instead of 
+         * undo logging them. Buffered values are visible to reads by the writing 
+         * thread and are written to the heap through the transaction's redo log when 
+         * the transaction commits, so each written location is persisted once per 
+         * transaction. Suited to transactions that set many small fields.
+         */
+        public static final Kind BUFFERED = new Kind(4);
         int val;
         private Kind(int value) {
             this.val = value;
@@ -78,7 +92,7 @@ public interface Heap {
          * Returns an array of available Kinds
          * @return an array of available Kinds 
          */
-        public static Kind[] values() { return new Kind[]{VOLATILE, DURABLE, TRANSACTIONAL}; }
+        public static Kind[] values() { return new Kind[]{VOLATILE, DURABLE, TRANSACTIONAL, BUFFERED}; }
 
     }
 
@@ -100,6 +114,8 @@ public interface Heap {
             return new DurableHeapImpl(path, size);
         if (kind.value() == Kind.TRANSACTIONAL.value())
             return new TransactionalHeapImpl(path, size);
+        if (kind.value() == Kind.BUFFERED.value())
+            return new BufferedHeapImpl(path, size);
         else
             throw new IllegalArgumentException("Invalid heap kind specified");
 
@@ -122,6 +138,8 @@ public interface Heap {
             return new DurableHeapImpl(path);
         if (kind.value() == Kind.TRANSACTIONAL.value())
             return new TransactionalHeapImpl(path);
+        if (kind.value() == Kind.BUFFERED.value())
+            return new BufferedHeapImpl(path);
         else
             throw new IllegalArgumentException("Invalid heap kind specified");
     }
@@ -140,6 +158,8 @@ public interface Heap {
             return new DurableHeapImpl(lowLevelHeap); }
         if (kind == Kind.TRANSACTIONAL.value())
             return new TransactionalHeapImpl(lowLevelHeap);
+        if (kind == Kind.BUFFERED.value())
+            return new BufferedHeapImpl(lowLevelHeap);
         else
             throw new IllegalArgumentException("Invalid heap kind specified");
     }
@@ -168,6 +188,39 @@ public interface Heap {
      */
     public Allocation allocate(long byteSize, ResourceScope scope, Consumer<Allocation> initializer);         
 
+    /**
+     * Creates an allocation that represents a block of persistent memory of {@code byteSize} bytes and stores 
+     * a reference to it at {@code referenceOffset} within {@code parent}. The memory is reserved, then the supplied 
+     * {@code initializer} function is executed on the new {@code Allocation}, then the allocation and the reference 
+     * are published together in a fail-safe manner: after an interruption either both are present or neither is. 
+     * Neither the initializer's writes nor the reference store are undo logged, which makes this cheaper than 
+     * allocating with an initializer and setting the reference within a transaction. If called within 
+     * {@code Accessor::execute} on a transactional heap, the allocation becomes part of that transaction and 
+     * the reference is stored as an ordinary transactional write: it is visible to the rest of the transaction 
+     * and restored if the transaction aborts.
+     * @param byteSize the number of bytes to allocate
+     * @param scope a {@code ResourceScope} to which this allocation will be associated with
+     * @param initializer a function to be executed on the new allocation
+     * @param parent the allocation in which to store a reference to the new allocation
+     * @param referenceOffset the offset within {@code parent} at which to store the reference
+     * @return an {@code Allocation} that represents the allocated memory
+     * @throws IllegalArgumentException if {@code parent} does not belong to this heap
+     * @throws IndexOutOfBoundsException if {@code referenceOffset} is outside of {@code parent}
+     * @throws OutOfMemoryError if the memory could not be allocated
+     */
+    public Allocation allocateReserved(long byteSize, ResourceScope scope, Consumer<Allocation> initializer, Allocation parent, long referenceOffset);
+
+    /**
+     * Creates allocations that represent blocks of persistent memory of the given sizes. All blocks are 
+     * allocated with a single call into the native allocator; either all blocks are allocated or none are, 
+     * even if the process is interrupted. Allocation buffers are never used. For a transactional heap, allocation will be done within a single transaction.
+     * @param byteSizes the number of bytes to allocate for each block
+     * @param scope a {@code ResourceScope} to which the allocations will be associated with
+     * @return an array of {@code Allocation}s, in the order of {@code byteSizes}
+     * @throws OutOfMemoryError if the memory could not be allocated
+     */
+    public Allocation[] allocateAll(long[] byteSizes, ResourceScope scope);
+
     /**
      * Deallocates the memory referenced by the given {@code address}. The deallocation will be done 
      * transactionally for a transactional heap
@@ -197,6 +250,32 @@ public interface Heap {
      */
     public long size();
     
+    /**
+     * Enables or disables per-thread allocation buffers for this heap. When enabled, allocations of up 
+     * to 256 bytes are carved out of larger chunks reserved from the heap by the allocating thread, 
+     * avoiding a call into the native allocator for each small allocation. Chunk occupancy is kept in 
+     * persistent memory, so allocations made from buffers can be freed after the heap is reopened, 
+     * whether or not buffers are enabled at that time. Allocations made within a transaction on a heap of 
+     * {@code Kind} TRANSACTIONAL or BUFFERED, and allocations made by {@link #allocateAll(long[], ResourceScope)}, 
+     * are not served from buffers. Allocations of a size registered with 
+     * {@link #registerAllocationClass(MemoryLayout)} are always served from that allocation class instead. 
+     * Has no effect on a heap of {@code Kind} VOLATILE.
+     * @param enabled if true, small allocations will be served from per-thread allocation buffers
+     */
+    public void useAllocationBuffers(boolean enabled);
+
+    /**
+     * Registers a custom allocation class for allocations with the given {@code layout}. Subsequent allocations 
+     * of the layout's size are served from the class without rounding and without a per-allocation header, which 
+     * reduces the memory footprint of fixed-size structures such as list or tree nodes. Allocation classes are not 
+     * stored in the heap; they must be registered again each time the heap is opened. Allocations of the layout's 
+     * size are served from the class even when allocation buffers are enabled. Has no effect on a heap of 
+     * {@code Kind} VOLATILE.
+     * @param layout the layout of allocations to be served by the allocation class
+     * @throws HeapException if the allocation class could not be registered
+     */
+    public void registerAllocationClass(MemoryLayout layout);
+
     /**
      * Returns the {@code Kind} of this heap.
      * @return the {@code Kind} of this heap
@@ -216,6 +295,8 @@ public interface Heap {
             return PersistentHeap.MINIMUM_HEAP_SIZE;
         if (kind.value() == Kind.TRANSACTIONAL.value())
             return PersistentHeap.MINIMUM_HEAP_SIZE;
+        if (kind.value() == Kind.BUFFERED.value())
+            return PersistentHeap.MINIMUM_HEAP_SIZE;
         else
             throw new IllegalArgumentException("Invalid heap kind specified");
     }
@@ -246,4 +327,22 @@ public interface Heap {
     default Allocation allocate(MemoryLayout layout, ResourceScope scope, Consumer<Allocation> initializer) {
         return allocate(layout.byteSize(), scope, initializer);
     }        
+
+    /**
+     * Creates an {@code Allocation} that represents a block of persistent memory with the given {@code layout} and 
+     * stores a reference to it at {@code referenceOffset} within {@code parent}. See 
+     * {@link #allocateReserved(long, ResourceScope, Consumer, Allocation, long)}.
+     * @param layout the layout of the persistent memory to be allocated
+     * @param scope a {@code ResourceScope} to which this allocation will be associated with
+     * @param initializer a function to be executed on the new allocation
+     * @param parent the allocation in which to store a reference to the new allocation
+     * @param referenceOffset the offset within {@code parent} at which to store the reference
+     * @return an {@code Allocation} that represents the allocated memory
+     * @throws IllegalArgumentException if {@code parent} does not belong to this heap
+     * @throws IndexOutOfBoundsException if {@code referenceOffset} is outside of {@code parent}
+     * @throws OutOfMemoryError if the memory could not be allocated
+     */
+    default Allocation allocateReserved(MemoryLayout layout, ResourceScope scope, Consumer<Allocation> initializer, Allocation parent, long referenceOffset) {
+        return allocateReserved(layout.byteSize(), scope, initializer, parent, referenceOffset);
+    }
 }
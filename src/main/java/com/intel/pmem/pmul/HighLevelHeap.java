@@ -8,7 +8,7 @@
 package com.intel.pmem.pmul;
 
 import java.lang.invoke.MethodHandle;
-import java.util.Stack;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import jdk.incubator.foreign.MemoryAddress;
@@ -21,23 +21,19 @@ import static jdk.incubator.foreign.MemoryLayout.PathElement.*;
 import static jdk.incubator.foreign.ValueLayout.*;
 
 abstract class HighLevelHeap implements Heap {
-    private static final ThreadLocal<Stack<MemorySegment>> inFlightSegments; 
     protected final LowLevelHeap lowLevelHeap;
     private Metadata metadata;
     private Heap.Kind kind;
-
-    static {
-        inFlightSegments = ThreadLocal.withInitial(() -> {
-            var s = new Stack<MemorySegment>(); 
-            s.push(null); 
-            return s;
-        });  
-    }
+    private volatile AllocationBuffers allocationBuffers;
 
     HighLevelHeap(Heap.Kind kind, LowLevelHeap lowLevelHeap, boolean create) {
         this.kind = kind;
         this.lowLevelHeap = lowLevelHeap;
         metadata = new Metadata(new Allocation(this, lowLevelHeap.metadata.getSegment()));
+        // chunks from a previous session must be known before any free, whether or not buffers are used 
+        if (lowLevelHeap instanceof PersistentHeap && AllocationBuffers.hasChunks(lowLevelHeap)) {
+            allocationBuffers = new AllocationBuffers((PersistentHeap)lowLevelHeap);
+        }
     }
 
     static class Metadata {
@@ -45,7 +41,8 @@ abstract class HighLevelHeap implements Heap {
             JAVA_INT.withName("kind"),
             JAVA_INT.withName("version"),
             ADDRESS.withName("user_root"),
-            JAVA_LONG.withName("user_root_size")
+            JAVA_LONG.withName("user_root_size"),
+            ADDRESS.withName("allocation_chunks")
         );
         static final Accessor KIND = Accessor.of(layout, PathElement.groupElement("kind"));
         static final Accessor USER_ROOT = Accessor.of(layout, PathElement.groupElement("user_root"));
@@ -84,6 +81,9 @@ abstract class HighLevelHeap implements Heap {
             case 3:
                 retVal = Kind.TRANSACTIONAL;
                 break;
+            case 4:
+                retVal = Kind.BUFFERED;
+                break;
             default:
                 throw new HeapException("Unsupported Heap Kind " + value);
         }
@@ -109,9 +109,45 @@ abstract class HighLevelHeap implements Heap {
         lowLevelHeap.close();
     }
 
+    @Override
+    public void useAllocationBuffers(boolean enabled) {
+        AllocationBuffers buffers = allocationBuffers;
+        if (buffers == null) {
+            if (!enabled) return;
+            synchronized (this) {
+                if (allocationBuffers == null) allocationBuffers = new AllocationBuffers((PersistentHeap)lowLevelHeap);
+                buffers = allocationBuffers;
+            }
+        }
+        buffers.setEnabled(enabled);
+    }
+
+    @Override
+    public void registerAllocationClass(MemoryLayout layout) {
+        ((PersistentHeap)lowLevelHeap).registerAllocationClass(layout);
+    }
+
+    // allocation and deallocation entry points for heap kinds that may be served from allocation buffers
+    MemorySegment allocateSegment(long byteSize, boolean transactional, ResourceScope scope) {
+        AllocationBuffers buffers = allocationBuffers;
+        if (buffers != null) {
+            MemorySegment segment = buffers.allocate(byteSize, transactional, scope);
+            if (segment != null) return segment;
+        }
+        return lowLevelHeap.allocateSegment(byteSize, transactional, scope);
+    }
+
+    void freeSegment(MemoryAddress address, boolean transactional) {
+        AllocationBuffers buffers = allocationBuffers;
+        if (buffers != null && buffers.free(address, transactional)) return;
+        lowLevelHeap.freeSegment(address, transactional);
+    }
+
     // Methods from Heap interface 
 	@Override public abstract Allocation allocate(long byteSize, ResourceScope scope);			
     @Override public abstract Allocation allocate(long byteSize, ResourceScope scope, Consumer<Allocation> initializer);
+    @Override public abstract Allocation[] allocateAll(long[] byteSizes, ResourceScope scope);
+    @Override public abstract Allocation allocateReserved(long byteSize, ResourceScope scope, Consumer<Allocation> initializer, Allocation parent, long referenceOffset);
 	@Override public abstract void free(AllocationAddress address);
 
     // Methods to service public static Accessor methods
@@ -122,16 +158,114 @@ abstract class HighLevelHeap implements Heap {
     public abstract <T> T execute(Supplier<T> body);
     public abstract void execute(Allocation allocation, Runnable body);
     public abstract <T> T execute(Allocation allocation, Supplier<T> body);
+
+    // services Allocation.fill, heap kinds with a faster way to fill override it
+    void fill(Allocation allocation, byte value) {
+        execute(allocation, () -> { allocation.segment().fill(value); });
+    }
+
+    // heap kinds without deferred persistence execute a batch as any other body
+    void batch(Runnable body) {
+        execute(body);
+    }
+
+    <T> T batch(Supplier<T> body) {
+        return execute(body);
+    }
+
+    // heap kinds without group commit execute the body immediately
+    <T> CompletableFuture<T> executeAsync(Supplier<T> body) {
+        try {
+            return CompletableFuture.completedFuture(execute(body));
+        }
+        catch (Throwable t) {
+            return CompletableFuture.failedFuture(t);
+        }
+    }
  
-    // Methods to service generated Accessor set method. Each each heap kind will execute 
-    // appropriate preamble, if any, then the body supplied, then appropriate postamble, if any. 
-    // Overloaded with number of long index parameters to improve performance by maintaining 
-    // sharp types for write call stack.
-    abstract void set(Consumer<MemorySegment> body, MethodHandle byteOffsetHandle, long elementSize, MemorySegment segment);
-    abstract void set(Consumer<MemorySegment> body, MethodHandle byteOffsetHandle, long elementSize, MemorySegment segment, long index);
-    abstract void set(Consumer<MemorySegment> body, MethodHandle byteOffsetHandle, long elementSize, MemorySegment segment, long index1, long index2);
-    abstract void set(Consumer<MemorySegment> body, MethodHandle byteOffsetHandle, long elementSize, Object... args);
-    abstract void setAtOffset(Consumer<MemorySegment> body, long elementSize, MemorySegment segment, long offset);
+    // Methods to service Allocation and generated Accessor set methods. Each heap kind executes its 
+    // preamble, if any, in beginWrite, which returns the segment through which the element is written 
+    // at targetOffset, and its postamble, if any, in endWrite. If the write throws, abortWrite is called instead of 
+    // endWrite and the caller rethrows. Arguments are primitive so that a write allocates nothing.
+    abstract MemorySegment beginWrite(MemorySegment segment, long byteOffset, long elementSize);
+    abstract void endWrite(MemorySegment segment, long byteOffset, long elementSize);
+    abstract void abortWrite(Throwable t);
+
+    // Atomic accessor operations write through these instead, since they must act on the element in 
+    // place, where other threads see it. Heap kinds that log or stage element writes override them.
+    MemorySegment beginAtomicWrite(MemorySegment segment, long byteOffset, long elementSize) {
+        return beginWrite(segment, byteOffset, elementSize);
+    }
+
+    void endAtomicWrite(MemorySegment segment, long byteOffset, long elementSize) {
+        endWrite(segment, byteOffset, elementSize);
+    }
+
+    void abortAtomicWrite(Throwable t) {
+        abortWrite(t);
+    }
+
+    // byte offsets of elements selected by a layout path, for use with beginWrite and readSegment
+    static long byteOffset(MethodHandle byteOffsetHandle) {
+        try {
+            return (long)byteOffsetHandle.invokeExact();
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    static long byteOffset(MethodHandle byteOffsetHandle, long index) {
+        try {
+            return (long)byteOffsetHandle.invokeExact(index);
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    static long byteOffset(MethodHandle byteOffsetHandle, long index1, long index2) {
+        try {
+            return (long)byteOffsetHandle.invokeExact(index1, index2);
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    static long byteOffset(MethodHandle byteOffsetHandle, Object[] indices) {
+        try {
+            return (long)byteOffsetHandle.invokeWithArguments(indices);
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    // Methods to service Allocation and generated Accessor get methods. Returns a segment from which 
+    // byteSize bytes at offset within segment can be read; heap kinds that do not buffer writes return 
+    // segment itself. The bytes are read at targetOffset within the returned segment.
+    MemorySegment readSegment(MemorySegment segment, long offset, long byteSize) {
+        return segment;
+    }
+
+    // The offset at which the bytes at offset within segment lie in target, a segment returned for them by 
+    // beginWrite or readSegment. That is either segment itself or a segment holding exactly those bytes.
+    static long targetOffset(MemorySegment segment, MemorySegment target, long offset) {
+        return target == segment ? offset : 0;
+    }
 
     public MemoryAddress segmentAddress(MemorySegment segment) { 
         return lowLevelHeap.transformAddress(segment.address());
@@ -150,6 +284,61 @@ abstract class HighLevelHeap implements Heap {
         return allocation;
     }
 
+    // Reserves memory for a new allocation, runs the initializer with the allocation in flight, then 
+    // publishes the allocation together with a reference to it stored at referenceOffset within parent.
+    // The new allocation is not undo logged. Outside of a transaction the reference is stored when the 
+    // allocation is published; within one it is written like any other store of the transaction, so 
+    // that it is visible to the rest of the transaction.
+    Allocation reserveAllocation(long byteSize, ResourceScope scope, Consumer<Allocation> initializer, Allocation parent, long referenceOffset) {
+        if (parent.heap() != this) throw new IllegalArgumentException("The parent allocation must belong to this heap");
+        PersistentHeap heap = (PersistentHeap)lowLevelHeap;
+        MemorySegment reference = parent.segment().asSlice(referenceOffset, ADDRESS.byteSize());
+        boolean transactional = Transaction.isActive();
+        long count = transactional ? 1 : 2;
+        MemorySegment actions = NativeScratch.pushActions(count);
+        try {
+            MemorySegment segment = heap.reserveSegment(byteSize, actions.asSlice(0, PersistentHeap.ACTION_SIZE), scope);
+            Allocation allocation = createAllocation(segment);
+            try {
+                beginInFlightSegment(segment);
+                try {
+                    initializer.accept(allocation);
+                }
+                finally {
+                    endInFlightSegment();
+                }
+                heap.flush(segment);
+                if (!transactional) heap.setValue(actions.asSlice(PersistentHeap.ACTION_SIZE, PersistentHeap.ACTION_SIZE), reference, segmentAddress(segment).toRawLongValue());
+            }
+            catch (Throwable t) {
+                heap.cancel(actions, 1);
+                throw t;
+            }
+            if (transactional) {
+                heap.publish(actions, count);
+                parent.setReference(referenceOffset, allocation);
+                return allocation;
+            }
+            try {
+                heap.publish(actions, count);
+            }
+            catch (Throwable t) {
+                heap.cancel(actions, count);
+                throw t;
+            }
+            return allocation;
+        }
+        finally {
+            NativeScratch.popActions();
+        }
+    }
+
+    Allocation[] createAllocations(MemorySegment[] segments) {
+        Allocation[] allocations = new Allocation[segments.length];
+        for (int i = 0; i < segments.length; i++) allocations[i] = new Allocation(this, segments[i]);
+        return allocations;
+    }
+
     Allocation createAllocation(MemoryAddress address, long byteSize, ResourceScope scope) {
         address = lowLevelHeap.reformAddress(address);
         MemorySegment segment = MemorySegment.ofAddress(address, byteSize, scope);
@@ -162,23 +351,16 @@ abstract class HighLevelHeap implements Heap {
         return new Allocation(this, segment);
     }
 
-    // 4 methods used to track in-flight allocations in support of optimized initialization
+    // 3 methods used to track in-flight allocations in support of optimized initialization
     boolean segmentIsInFlight(MemorySegment segment) {
-        return segmentContainsSlice(inFlightSegments.get().peek(), segment);
+        return InFlightSegments.current().contains(segment);
     }
 
     void beginInFlightSegment(MemorySegment segment) {
-        inFlightSegments.get().push(segment);
+        InFlightSegments.current().push(segment);
     }
 
     void endInFlightSegment() {
-        inFlightSegments.get().pop();
-    }
-
-    boolean segmentContainsSlice(MemorySegment segment, MemorySegment slice) {
-        if (segment == null || slice == null) return false;
-        long segmentAddr = segment.address().toRawLongValue(); 
-        long sliceAddr = slice.address().toRawLongValue(); 
-        return segmentAddr <= sliceAddr && segmentAddr + segment.byteSize() >= sliceAddr + slice.byteSize();
+        InFlightSegments.current().pop();
     }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2022 Intel Corporation
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ *
+ */
+
+package com.intel.pmem.pmul;
+
+import java.util.Arrays;
+import jdk.incubator.foreign.MemorySegment;
+
+/*
+ The segments a thread has in flight, i.e. is writing as a whole within execute or an allocation
+ initializer, so that writes within them skip per-write flushing or snapshotting.
+
+ Segments nest and only the innermost one is consulted. They are kept as primitive [base, end)
+ address ranges, with the innermost range in fields, so the check made on every write reads two
+ longs of a thread-confined object and neither locks nor allocates.
+
+ The object also counts the thread's open batches on durable heaps, so a write outside of any batch
+ learns that it must be persisted at once from the same lookup, see DurableHeapImpl.
+*/
+final class InFlightSegments {
+    private static final ThreadLocal<InFlightSegments> segments = ThreadLocal.withInitial(InFlightSegments::new);
+
+    private long[] bases;
+    private long[] ends;
+    private int depth;
+    private long base;
+    private long end;
+    private int batchDepth;
+
+    private InFlightSegments() {
+        this.bases = new long[8];
+        this.ends = new long[8];
+    }
+
+    static InFlightSegments current() {
+        return segments.get();
+    }
+
+    // true if slice lies within the innermost in-flight segment
+    boolean contains(MemorySegment slice) {
+        if (depth == 0) return false;
+        long address = slice.address().toRawLongValue();
+        return base <= address && address + slice.byteSize() <= end;
+    }
+
+    // true if the thread is within a batch on any durable heap
+    boolean inBatch() {
+        return batchDepth > 0;
+    }
+
+    void enterBatch() {
+        batchDepth++;
+    }
+
+    void exitBatch() {
+        batchDepth--;
+    }
+
+    void push(MemorySegment segment) {
+        if (depth == bases.length) {
+            bases = Arrays.copyOf(bases, depth * 2);
+            ends = Arrays.copyOf(ends, depth * 2);
+        }
+        bases[depth] = base;
+        ends[depth] = end;
+        depth++;
+        base = segment.address().toRawLongValue();
+        end = base + segment.byteSize();
+    }
+
+    void pop() {
+        if (depth == 0) throw new IllegalStateException("No segment in flight");
+        depth--;
+        base = bases[depth];
+        end = ends[depth];
+    }
+}
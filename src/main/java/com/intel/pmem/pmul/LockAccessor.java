@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2022 Intel Corporation
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ *
+ */
+
+package com.intel.pmem.pmul;
+
+import java.lang.invoke.MethodHandle;
+import jdk.incubator.foreign.MemoryLayout.PathElement;
+import jdk.incubator.foreign.MemoryLayout;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.SequenceLayout;
+import static jdk.incubator.foreign.ValueLayout.*;
+
+/**
+ * An accessor for a Heap-resident lock, i.e. a {@link #MUTEX} or {@link #RWLOCK} element of a {@code java.foreign.MemoryLayout}.
+ * Locks live in the heap alongside the data they guard, so a lock can be found from the allocation holding it,
+ * including after a restart. Locks held when a heap was closed, or when the process ended, are released when the
+ * heap is next opened; a lock is reinitialized on its first use after the heap is opened. Lock memory must be
+ * zeroed before the lock is first used, as newly allocated memory is. Locks are supported on heaps of {@code Kind}
+ * DURABLE, TRANSACTIONAL and BUFFERED.
+ */
+public final class LockAccessor {
+    private static final long LOCK_SIZE = 64;
+    private static final long LOCK_ALIGNMENT = 8;
+    // pmemobj lock functions return EBUSY if the lock is held
+    private static final int EBUSY = 16;
+
+    /**
+     * The layout of a mutual exclusion lock. The layout may be renamed with {@code withName}.
+     */
+    public static final MemoryLayout MUTEX = lockLayout("pmemobj_mutex");
+
+    /**
+     * The layout of a reader-writer lock. The layout may be renamed with {@code withName}.
+     */
+    public static final MemoryLayout RWLOCK = lockLayout("pmemobj_rwlock");
+
+    private final MethodHandle byteOffsetHandle;
+    private final boolean readWrite;
+
+    private LockAccessor(MethodHandle byteOffsetHandle, boolean readWrite) {
+        this.byteOffsetHandle = byteOffsetHandle;
+        this.readWrite = readWrite;
+    }
+
+    /**
+     * Creates an accessor for the mutual exclusion lock selected by the provided layout path, where the path is
+     * rooted in the given layout.
+     * @param layout the root layout
+     * @param elements the layout path elements
+     * @return the accessor
+     * @throws IllegalArgumentException if the layout path does not select a {@link #MUTEX}
+     */
+    public static LockAccessor ofMutex(MemoryLayout layout, PathElement... elements) {
+        return of(layout, elements, false);
+    }
+
+    /**
+     * Creates an accessor for the reader-writer lock selected by the provided layout path, where the path is
+     * rooted in the given layout.
+     * @param layout the root layout
+     * @param elements the layout path elements
+     * @return the accessor
+     * @throws IllegalArgumentException if the layout path does not select a {@link #RWLOCK}
+     */
+    public static LockAccessor ofReadWriteLock(MemoryLayout layout, PathElement... elements) {
+        return of(layout, elements, true);
+    }
+
+    private static LockAccessor of(MemoryLayout layout, PathElement[] elements, boolean readWrite) {
+        MemoryLayout expected = readWrite ? RWLOCK : MUTEX;
+        if (!isLock(layout.select(elements), expected)) throw new IllegalArgumentException("Layout path does not select a " + expected.name().get());
+        return new LockAccessor(layout.byteOffsetHandle(elements), readWrite);
+    }
+
+    // the lock kind is named on the element layout as well, since withName replaces only the outer name
+    private static MemoryLayout lockLayout(String name) {
+        return MemoryLayout.sequenceLayout(LOCK_SIZE, JAVA_BYTE.withName(name)).withBitAlignment(LOCK_ALIGNMENT * 8).withName(name);
+    }
+
+    private static boolean isLock(MemoryLayout selected, MemoryLayout expected) {
+        return selected instanceof SequenceLayout sequence && expected instanceof SequenceLayout lock
+            && sequence.elementLayout().equals(lock.elementLayout()) && sequence.byteSize() == LOCK_SIZE
+            && sequence.bitAlignment() >= lock.bitAlignment();
+    }
+
+    /**
+     * Acquires the target lock within the supplied allocation, exclusively, blocking until it is available.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @throws UnsupportedOperationException if the allocation is on a heap of {@code Kind} VOLATILE
+     * @throws HeapException if the lock could not be acquired
+     */
+    public void lock(Allocation allocation) {
+        lockAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle));
+    }
+
+    /**
+     * Acquires the target lock within the supplied allocation, exclusively, blocking until it is available.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @throws UnsupportedOperationException if the allocation is on a heap of {@code Kind} VOLATILE
+     * @throws HeapException if the lock could not be acquired
+     */
+    public void lock(Allocation allocation, long index) {
+        lockAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index));
+    }
+
+    /**
+     * Acquires the target lock within the supplied allocation, exclusively, blocking until it is available.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @throws UnsupportedOperationException if the allocation is on a heap of {@code Kind} VOLATILE
+     * @throws HeapException if the lock could not be acquired
+     */
+    public void lock(Allocation allocation, long index1, long index2) {
+        lockAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2));
+    }
+
+    /**
+     * Acquires the target lock within the supplied allocation, exclusively, if it is available.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @return true if the lock was acquired
+     * @throws UnsupportedOperationException if the allocation is on a heap of {@code Kind} VOLATILE
+     * @throws HeapException if the lock could not be acquired for a reason other than being held
+     */
+    public boolean tryLock(Allocation allocation) {
+        return tryLockAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle));
+    }
+
+    /**
+     * Acquires the target lock within the supplied allocation, exclusively, if it is available.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @return true if the lock was acquired
+     * @throws UnsupportedOperationException if the allocation is on a heap of {@code Kind} VOLATILE
+     * @throws HeapException if the lock could not be acquired for a reason other than being held
+     */
+    public boolean tryLock(Allocation allocation, long index) {
+        return tryLockAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index));
+    }
+
+    /**
+     * Acquires the target lock within the supplied allocation, exclusively, if it is available.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @return true if the lock was acquired
+     * @throws UnsupportedOperationException if the allocation is on a heap of {@code Kind} VOLATILE
+     * @throws HeapException if the lock could not be acquired for a reason other than being held
+     */
+    public boolean tryLock(Allocation allocation, long index1, long index2) {
+        return tryLockAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2));
+    }
+
+    /**
+     * Acquires the target reader-writer lock within the supplied allocation for reading, blocking until it is available.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @throws UnsupportedOperationException if the target lock is a mutex, or the allocation is on a heap of {@code Kind} VOLATILE
+     * @throws HeapException if the lock could not be acquired
+     */
+    public void readLock(Allocation allocation) {
+        readLockAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle));
+    }
+
+    /**
+     * Acquires the target reader-writer lock within the supplied allocation for reading, blocking until it is available.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @throws UnsupportedOperationException if the target lock is a mutex, or the allocation is on a heap of {@code Kind} VOLATILE
+     * @throws HeapException if the lock could not be acquired
+     */
+    public void readLock(Allocation allocation, long index) {
+        readLockAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index));
+    }
+
+    /**
+     * Acquires the target reader-writer lock within the supplied allocation for reading, blocking until it is available.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @throws UnsupportedOperationException if the target lock is a mutex, or the allocation is on a heap of {@code Kind} VOLATILE
+     * @throws HeapException if the lock could not be acquired
+     */
+    public void readLock(Allocation allocation, long index1, long index2) {
+        readLockAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2));
+    }
+
+    /**
+     * Acquires the target reader-writer lock within the supplied allocation for reading, if it is available.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @return true if the lock was acquired
+     * @throws UnsupportedOperationException if the target lock is a mutex, or the allocation is on a heap of {@code Kind} VOLATILE
+     * @throws HeapException if the lock could not be acquired for a reason other than being held
+     */
+    public boolean tryReadLock(Allocation allocation) {
+        return tryReadLockAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle));
+    }
+
+    /**
+     * Acquires the target reader-writer lock within the supplied allocation for reading, if it is available.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @return true if the lock was acquired
+     * @throws UnsupportedOperationException if the target lock is a mutex, or the allocation is on a heap of {@code Kind} VOLATILE
+     * @throws HeapException if the lock could not be acquired for a reason other than being held
+     */
+    public boolean tryReadLock(Allocation allocation, long index) {
+        return tryReadLockAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index));
+    }
+
+    /**
+     * Acquires the target reader-writer lock within the supplied allocation for reading, if it is available.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @return true if the lock was acquired
+     * @throws UnsupportedOperationException if the target lock is a mutex, or the allocation is on a heap of {@code Kind} VOLATILE
+     * @throws HeapException if the lock could not be acquired for a reason other than being held
+     */
+    public boolean tryReadLock(Allocation allocation, long index1, long index2) {
+        return tryReadLockAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2));
+    }
+
+    /**
+     * Releases the target lock within the supplied allocation, which must be held by the calling thread.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @throws UnsupportedOperationException if the allocation is on a heap of {@code Kind} VOLATILE
+     * @throws HeapException if the lock could not be released
+     */
+    public void unlock(Allocation allocation) {
+        unlockAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle));
+    }
+
+    /**
+     * Releases the target lock within the supplied allocation, which must be held by the calling thread.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index an access coordinate used to navigate to the target layout
+     * @throws UnsupportedOperationException if the allocation is on a heap of {@code Kind} VOLATILE
+     * @throws HeapException if the lock could not be released
+     */
+    public void unlock(Allocation allocation, long index) {
+        unlockAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index));
+    }
+
+    /**
+     * Releases the target lock within the supplied allocation, which must be held by the calling thread.
+     * @param allocation the allocation whose memory is to be dereferenced
+     * @param index1 an access coordinate used to navigate to the target layout
+     * @param index2 an access coordinate used to navigate to the target layout
+     * @throws UnsupportedOperationException if the allocation is on a heap of {@code Kind} VOLATILE
+     * @throws HeapException if the lock could not be released
+     */
+    public void unlock(Allocation allocation, long index1, long index2) {
+        unlockAt(allocation, HighLevelHeap.byteOffset(byteOffsetHandle, index1, index2));
+    }
+
+    private void lockAt(Allocation allocation, long byteOffset) {
+        int err = operate(allocation, byteOffset, readWrite ? PersistentHeap.pmemobjRwlockWrlock : PersistentHeap.pmemobjMutexLock);
+        if (err != 0) throw new HeapException("Failed to acquire lock, error " + err);
+    }
+
+    private boolean tryLockAt(Allocation allocation, long byteOffset) {
+        int err = operate(allocation, byteOffset, readWrite ? PersistentHeap.pmemobjRwlockTrywrlock : PersistentHeap.pmemobjMutexTrylock);
+        if (err != 0 && err != EBUSY) throw new HeapException("Failed to acquire lock, error " + err);
+        return err == 0;
+    }
+
+    private void readLockAt(Allocation allocation, long byteOffset) {
+        checkReadWrite();
+        int err = operate(allocation, byteOffset, PersistentHeap.pmemobjRwlockRdlock);
+        if (err != 0) throw new HeapException("Failed to acquire read lock, error " + err);
+    }
+
+    private boolean tryReadLockAt(Allocation allocation, long byteOffset) {
+        checkReadWrite();
+        int err = operate(allocation, byteOffset, PersistentHeap.pmemobjRwlockTryrdlock);
+        if (err != 0 && err != EBUSY) throw new HeapException("Failed to acquire read lock, error " + err);
+        return err == 0;
+    }
+
+    private void unlockAt(Allocation allocation, long byteOffset) {
+        int err = operate(allocation, byteOffset, readWrite ? PersistentHeap.pmemobjRwlockUnlock : PersistentHeap.pmemobjMutexUnlock);
+        if (err != 0) throw new HeapException("Failed to release lock, error " + err);
+    }
+
+    private void checkReadWrite() {
+        if (!readWrite) throw new UnsupportedOperationException("Lock is not a reader-writer lock");
+    }
+
+    private static int operate(Allocation allocation, long byteOffset, MethodHandle operation) {
+        if (!(allocation.heap().lowLevelHeap instanceof PersistentHeap heap)) throw new UnsupportedOperationException("Locks are not supported on volatile heaps");
+        MemorySegment lock = allocation.segment().asSlice(byteOffset, LOCK_SIZE);
+        if (lock.address().toRawLongValue() % LOCK_ALIGNMENT != 0) throw new IllegalArgumentException("Lock is not aligned to " + LOCK_ALIGNMENT + " bytes");
+        return heap.lockOperation(operation, lock);
+    }
+}
@@ -27,7 +27,7 @@ abstract class LowLevelHeap {
     abstract MemoryAddress reformAddress(MemoryAddress adddress);
     abstract long size();
     abstract void close();
-    static final int HEAP_VERSION = 900;
+    static final int HEAP_VERSION = 901;
     static final int MIN_HEAP_VERSION = 900;
     Metadata metadata;
     Path path;
@@ -43,6 +43,22 @@ abstract class LowLevelHeap {
         public int value() {return val;}
     }
 
+    // allocates all segments or none, heaps that can batch allocations override this
+    MemorySegment[] allocateSegments(long[] byteSizes, boolean transactional, ResourceScope scope) {
+        MemorySegment[] segments = new MemorySegment[byteSizes.length];
+        int count = 0;
+        try {
+            for (; count < byteSizes.length; count++) {
+                segments[count] = allocateSegment(byteSizes[count], transactional, scope);
+            }
+        }
+        catch (Throwable t) {
+            for (int i = 0; i < count; i++) freeSegment(segments[i].address(), transactional);
+            throw t;
+        }
+        return segments;
+    }
+
     // default impls, not called for VolatileHeap, must be overridden by PersistentHeap
     long poolAddress() {
         throw new UnsupportedOperationException();
@@ -85,14 +101,18 @@ abstract class LowLevelHeap {
             ValueLayout.JAVA_INT.withName("kind"),
             ValueLayout.JAVA_INT.withName("version"),
             ValueLayout.ADDRESS.withName("user_root"),
-            ValueLayout.JAVA_LONG.withName("user_root_size")
+            ValueLayout.JAVA_LONG.withName("user_root_size"),
+            ValueLayout.ADDRESS.withName("allocation_chunks")
         );
         static final VarHandle KIND = layout.varHandle(PathElement.groupElement("kind"));
         static final VarHandle VERSION = layout.varHandle(PathElement.groupElement("version"));
         static final VarHandle USER_ROOT = layout.varHandle(PathElement.groupElement("user_root"));
         static final VarHandle USER_ROOT_SIZE = layout.varHandle(PathElement.groupElement("user_root_size"));
+        static final VarHandle ALLOCATION_CHUNKS = layout.varHandle(PathElement.groupElement("allocation_chunks"));
         private static final long ROOT_LAYOUT_OFFSET = layout.byteOffset(groupElement("user_root"));
         private static final long ROOT_LAYOUT_SIZE = layout.select(groupElement("user_root")).byteSize() + layout.select(groupElement("user_root_size")).byteSize();
+        private static final long CHUNKS_LAYOUT_OFFSET = layout.byteOffset(groupElement("allocation_chunks"));
+        private static final long CHUNKS_LAYOUT_SIZE = layout.select(groupElement("allocation_chunks")).byteSize();
         private final MemorySegment metadata;
 
         Metadata(LowLevelHeap heap, MemorySegment segment) {
@@ -114,5 +134,9 @@ abstract class LowLevelHeap {
             USER_ROOT_SIZE.set(metadata, size);
         }
         public MemorySegment rootAsSlice() { return metadata.asSlice(ROOT_LAYOUT_OFFSET, ROOT_LAYOUT_SIZE); }
+
+        public MemoryAddress getAllocationChunks() {return (MemoryAddress)ALLOCATION_CHUNKS.get(metadata);}
+        public void setAllocationChunks(MemoryAddress address) {ALLOCATION_CHUNKS.set(metadata, address);}
+        public MemorySegment allocationChunksAsSlice() { return metadata.asSlice(CHUNKS_LAYOUT_OFFSET, CHUNKS_LAYOUT_SIZE); }
     }
  }
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2022 Intel Corporation
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ *
+ */
+
+package com.intel.pmem.pmul;
+
+import java.util.Arrays;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import jdk.incubator.foreign.SegmentAllocator;
+
+/*
+ Per-thread native memory used to marshal PMEMoid arguments and return values of downcalls,
+ so that allocate, free and snapshot paths do not allocate native memory on each call.
+
+ The return allocator always hands out the start of the same slice, so a struct returned by a
+ downcall is only valid until the next struct-returning downcall on the same thread. The oid
+ slot is separate and can hold an out-parameter across such calls. Neither may be held across
+ user code. Action buffers for reserve and publish sequences are kept on a stack, as such a 
+ sequence runs an initializer that may itself reserve. The memory is released once the owning 
+ thread's scratch becomes unreachable.
+*/
+final class NativeScratch {
+    private static final long SLOT_SIZE = 64;
+    private static final ThreadLocal<NativeScratch> scratch = ThreadLocal.withInitial(NativeScratch::new);
+
+    private final SegmentAllocator returnAllocator;
+    private final MemorySegment oid;
+    private MemorySegment[] actions;
+    private int actionsDepth;
+
+    private NativeScratch() {
+        MemorySegment segment = MemorySegment.allocateNative(2 * SLOT_SIZE, ResourceScope.newImplicitScope());
+        this.returnAllocator = SegmentAllocator.prefixAllocator(segment.asSlice(0, SLOT_SIZE));
+        this.oid = segment.asSlice(SLOT_SIZE, PersistentHeap.pmemOid.byteSize());
+        this.actions = new MemorySegment[2];
+    }
+
+    // allocator for struct return values of downcalls
+    static SegmentAllocator returnAllocator() {
+        return scratch.get().returnAllocator;
+    }
+
+    // zeroed PMEMoid out-parameter
+    static MemorySegment oid() {
+        MemorySegment oid = scratch.get().oid;
+        oid.fill((byte)0);
+        return oid;
+    }
+
+    // buffer for count pobj_actions, held until the matching popActions
+    static MemorySegment pushActions(long count) {
+        NativeScratch current = scratch.get();
+        if (current.actionsDepth == current.actions.length) current.actions = Arrays.copyOf(current.actions, current.actionsDepth * 2);
+        MemorySegment buffer = current.actions[current.actionsDepth];
+        if (buffer == null || buffer.byteSize() < count * PersistentHeap.ACTION_SIZE) {
+            buffer = MemorySegment.allocateNative(count * PersistentHeap.ACTION_SIZE, ResourceScope.newImplicitScope());
+            current.actions[current.actionsDepth] = buffer;
+        }
+        current.actionsDepth++;
+        return buffer.asSlice(0, count * PersistentHeap.ACTION_SIZE);
+    }
+
+    static void popActions() {
+        scratch.get().actionsDepth--;
+    }
+}
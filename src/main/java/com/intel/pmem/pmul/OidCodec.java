@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2022 Intel Corporation
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ *
+ */
+
+package com.intel.pmem.pmul;
+
+import java.lang.invoke.VarHandle;
+import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.MemorySegment;
+import static jdk.incubator.foreign.MemoryLayout.PathElement.*;
+
+/*
+ Translates between addresses within a pool and PMEMoids without calling into pmemobj. A PMEMoid
+ is the pool's uuid_lo, which is fixed for the lifetime of the pool, and the pool-relative offset.
+ Encoded oids live in the calling thread's scratch memory and are only valid until the next encode.
+*/
+final class OidCodec {
+    private static final VarHandle UUID_LO = PersistentHeap.pmemOid.varHandle(groupElement("pool_uuid_lo"));
+    private static final VarHandle OFFSET = PersistentHeap.pmemOid.varHandle(groupElement("offset"));
+
+    private final long poolAddress;
+    private final long poolUuidLo;
+
+    OidCodec(long poolAddress, long poolUuidLo) {
+        this.poolAddress = poolAddress;
+        this.poolUuidLo = poolUuidLo;
+    }
+
+    MemorySegment encode(MemoryAddress address) {
+        MemorySegment oid = NativeScratch.oid();
+        UUID_LO.set(oid, poolUuidLo);
+        OFFSET.set(oid, address.toRawLongValue() - poolAddress);
+        return oid;
+    }
+
+    static long offset(MemorySegment oid) {
+        return (long)OFFSET.get(oid);
+    }
+
+    static long uuidLo(MemorySegment oid) {
+        return (long)UUID_LO.get(oid);
+    }
+}
@@ -17,6 +17,8 @@ import java.lang.invoke.VarHandle;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import jdk.incubator.foreign.Addressable;
@@ -47,8 +49,24 @@ import static jdk.incubator.foreign.ValueLayout.*;
  */
 public class PersistentHeap extends LowLevelHeap {
 	private final long poolAddress;
-	private long currentSize;
+	// only grows, see updateSize
+	private volatile long currentSize;
+	// the root stored in the heap metadata, or null if it must be read again, see getRoot
+	private Root root;
+	// transactions that have set the root and not yet ended; while any are open the root is not cached
+	private int pendingRootUpdates;
+	private final Runnable rootPublication = () -> endRootUpdate(true);
+	private final Runnable rootInvalidation = () -> endRootUpdate(false);
+    private final long grantedBase;
 	private boolean valid;
+    private final OidCodec oidCodec;
+    private volatile AllocationClasses allocationClasses = AllocationClasses.NONE;
+    private volatile int[] arenas = new int[0];
+    // every arena created in this heap, guarded by this; pmemobj cannot destroy arenas, so they are reused
+    private int[] createdArenas = new int[0];
+    private int createdArenaCount;
+    private final AtomicInteger nextArena = new AtomicInteger();
+    private final ThreadLocal<int[]> pinnedArenas = new ThreadLocal<>();
     static MemoryLayout pmemOid = MemoryLayout.structLayout(
 		JAVA_LONG.withName("pool_uuid_lo"),
 		JAVA_LONG.withName("offset")
@@ -57,21 +75,46 @@ public class PersistentHeap extends LowLevelHeap {
     private static final long MAX_HEAP_SIZE = 12 * 1024 * 1024 * 1024L * 1024L;
     private static final String POOL_SET_FILE = "myobjpool.set";
     static final long TYPE_NUM = 1017;
+    private static final long ALLOCATION_CLASS_BLOCK_SIZE = 256 * 1024;
+    private static final int MAX_UNITS_PER_BLOCK = 1024;
+
+    private static final VarHandle CURRENT_SIZE;
+    private static final VarHandle ROOT;
 
     static final MethodHandle pmemPersist;
+    static final MethodHandle pmemFlush;
+    static final MethodHandle pmemDrain;
+    static final MethodHandle pmemMemmovePersist;
+    static final MethodHandle pmemMemmoveNodrain;
+    static final MethodHandle pmemMemsetPersist;
+    static final MethodHandle pmemMemsetNodrain;
     static final MethodHandle pmemobjCreate;
     static final MethodHandle pmemobjErrormsg;
     static final MethodHandle pmemobjOpen;
     static final MethodHandle pmemobjZalloc;
     static final MethodHandle pmemobjTxZalloc;
-    static final MethodHandle pmemobjOid;
     static final MethodHandle pmemobjFree;
     static final MethodHandle pmemobjTxFree;
     static final MethodHandle pmemobjAllocUsableSize;
     static final MethodHandle pmemobjClose;
     static final MethodHandle pmemobjRoot;
-    static final MethodHandle pmemobjPoolByOid;
+    static final MethodHandle pmemobjPoolByPtr;
     static final MethodHandle pmempoolRm;
+    static final MethodHandle pmemobjXreserve;
+    static final MethodHandle pmemobjSetValue;
+    static final MethodHandle pmemobjPublish;
+    static final MethodHandle pmemobjTxPublish;
+    static final MethodHandle pmemobjMutexLock;
+    static final MethodHandle pmemobjMutexTrylock;
+    static final MethodHandle pmemobjMutexUnlock;
+    static final MethodHandle pmemobjRwlockRdlock;
+    static final MethodHandle pmemobjRwlockTryrdlock;
+    static final MethodHandle pmemobjRwlockWrlock;
+    static final MethodHandle pmemobjRwlockTrywrlock;
+    static final MethodHandle pmemobjRwlockUnlock;
+    static final MethodHandle pmemobjCancel;
+    static final MethodHandle pmemobjXalloc;
+    static final MethodHandle pmemobjTxXalloc;
 
     /**
     * The minimum size for a Persistent heap, in bytes. Attempting to create a heap with a size smaller that this will throw an 
@@ -81,6 +124,9 @@ public class PersistentHeap extends LowLevelHeap {
 
     private static final int RM_POOL_FLAG;
     static final long MODE_FLAG; 
+    static final long ACTION_SIZE;
+    private static final long RESERVE_ZERO_FLAG;
+    private static final long ALLOC_ZERO_FLAG;
 
     static {
         System.loadLibrary("pmul");
@@ -91,23 +137,54 @@ public class PersistentHeap extends LowLevelHeap {
         MINIMUM_HEAP_SIZE = nativeMinHeapSize0();
         RM_POOL_FLAG = nativeRemovePoolFlag();
         MODE_FLAG = nativeModeFlag();
+        ACTION_SIZE = nativeActionSize();
+        RESERVE_ZERO_FLAG = nativeReserveZeroFlag();
+        ALLOC_ZERO_FLAG = nativeAllocZeroFlag();
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            CURRENT_SIZE = lookup.findVarHandle(PersistentHeap.class, "currentSize", long.class);
+            ROOT = lookup.findVarHandle(PersistentHeap.class, "root", Root.class);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
 
         CLinker linker = CLinker.systemCLinker();
         pmemobjErrormsg = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_errormsg").get(), FunctionDescriptor.of(ADDRESS));
         pmemPersist = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmem_persist").get(), FunctionDescriptor.ofVoid(ADDRESS, JAVA_LONG));
+        pmemFlush = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmem_flush").get(), FunctionDescriptor.ofVoid(ADDRESS, JAVA_LONG));
+        pmemDrain = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmem_drain").get(), FunctionDescriptor.ofVoid());
+        pmemMemmovePersist = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmem_memmove_persist").get(), FunctionDescriptor.of(ADDRESS, ADDRESS, ADDRESS, JAVA_LONG));
+        pmemMemmoveNodrain = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmem_memmove_nodrain").get(), FunctionDescriptor.of(ADDRESS, ADDRESS, ADDRESS, JAVA_LONG));
+        pmemMemsetPersist = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmem_memset_persist").get(), FunctionDescriptor.of(ADDRESS, ADDRESS, JAVA_INT, JAVA_LONG));
+        pmemMemsetNodrain = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmem_memset_nodrain").get(), FunctionDescriptor.of(ADDRESS, ADDRESS, JAVA_INT, JAVA_LONG));
         pmemobjCreate = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_create").get(), FunctionDescriptor.of(ADDRESS, ADDRESS, ADDRESS, JAVA_LONG, JAVA_LONG));
         pmemobjOpen = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_open").get(), FunctionDescriptor.of(ADDRESS, ADDRESS, ADDRESS));
         pmemobjZalloc = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_zalloc").get(), FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_LONG, JAVA_LONG));
         pmemobjTxZalloc = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_tx_zalloc").get(), FunctionDescriptor.of(pmemOid, JAVA_LONG, JAVA_LONG));
-        pmemobjOid = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_oid").get(), FunctionDescriptor.of(pmemOid, ADDRESS));
         pmemobjFree = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_free").get(), FunctionDescriptor.ofVoid(ADDRESS));
         pmemobjTxFree = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_tx_free").get(), FunctionDescriptor.of(JAVA_INT, pmemOid));
         pmemobjAllocUsableSize = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_alloc_usable_size").get(), FunctionDescriptor.of(JAVA_LONG, pmemOid));
         pmemobjClose = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_close").get(), FunctionDescriptor.ofVoid(ADDRESS));
         pmemobjRoot = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_root").get(), FunctionDescriptor.of(pmemOid, ADDRESS, JAVA_LONG));
-        pmemobjPoolByOid = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_pool_by_oid").get(), FunctionDescriptor.of(ADDRESS, pmemOid));
+        pmemobjPoolByPtr = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_pool_by_ptr").get(), FunctionDescriptor.of(ADDRESS, ADDRESS));
         pmempoolRm = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmempool_rm").get(), FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT));
-
+        pmemobjXreserve = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_xreserve").get(), FunctionDescriptor.of(pmemOid, ADDRESS, ADDRESS, JAVA_LONG, JAVA_LONG, JAVA_LONG));
+        pmemobjSetValue = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_set_value").get(), FunctionDescriptor.ofVoid(ADDRESS, ADDRESS, ADDRESS, JAVA_LONG));
+        pmemobjPublish = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_publish").get(), FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_LONG));
+        pmemobjTxPublish = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_tx_publish").get(), FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_LONG));
+        pmemobjMutexLock = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_mutex_lock").get(), FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+        pmemobjMutexTrylock = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_mutex_trylock").get(), FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+        pmemobjMutexUnlock = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_mutex_unlock").get(), FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+        pmemobjRwlockRdlock = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_rwlock_rdlock").get(), FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+        pmemobjRwlockTryrdlock = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_rwlock_tryrdlock").get(), FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+        pmemobjRwlockWrlock = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_rwlock_wrlock").get(), FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+        pmemobjRwlockTrywrlock = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_rwlock_trywrlock").get(), FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+        pmemobjRwlockUnlock = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_rwlock_unlock").get(), FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+        pmemobjCancel = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_cancel").get(), FunctionDescriptor.ofVoid(ADDRESS, ADDRESS, JAVA_LONG));
+        pmemobjXalloc = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_xalloc").get(), FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_LONG, JAVA_LONG, JAVA_LONG, ADDRESS, ADDRESS));
+        pmemobjTxXalloc = linker.downcallHandle(SymbolLookup.loaderLookup().lookup("pmemobj_tx_xalloc").get(), FunctionDescriptor.of(pmemOid, JAVA_LONG, JAVA_LONG, JAVA_LONG));
     }
 
     static void createPoolSetFile(File file, long size) throws IOException {
@@ -258,7 +335,12 @@ public class PersistentHeap extends LowLevelHeap {
         else {
             this.currentSize = size;
         }
-        MemorySegment metadataSegment = getRootInternal(Metadata.layout);
+        // the pool's mapped extent is the heap's granted size plus the fixed space preceding the heap
+        long granted = nativeHeapSizeGranted0(poolAddress);
+        grantedBase = (granted < 0) ? -1 : currentSize - granted;
+        MemorySegment rootOid = getRoot0(Metadata.layout.byteSize());
+        oidCodec = new OidCodec(poolAddress, OidCodec.uuidLo(rootOid));
+        MemorySegment metadataSegment = createSegment(MemoryAddress.ofLong(poolAddress + OidCodec.offset(rootOid)), Metadata.layout.byteSize(), ResourceScope.globalScope());
         if (create) {
             Transaction.run(this, () -> {
                 addToTransaction(metadataSegment);
@@ -305,6 +387,92 @@ public class PersistentHeap extends LowLevelHeap {
         return allocateSegment(layout.byteSize(), transactional, scope);
     }
 
+    /**
+     * Registers a custom allocation class for blocks of persistent memory with the given layout. See 
+     * {@link #registerAllocationClass(long)}.
+     * @param layout the layout of the persistent memory blocks to be served by the allocation class
+     * @throws HeapException if the allocation class could not be registered
+     */
+    public void registerAllocationClass(MemoryLayout layout) {
+        registerAllocationClass(layout.byteSize());
+    }
+
+    /**
+     * Registers a custom allocation class for blocks of persistent memory of exactly {@code byteSize} bytes. Subsequent 
+     * allocations of that size are served from the class without rounding and without a per-allocation header, 
+     * which reduces the memory footprint of fixed-size structures. Allocation classes are not stored in the heap; 
+     * they must be registered again each time the heap is opened. Registering a size twice has no effect.
+     * Allocations of a registered size are never served from allocation buffers.
+     * @param byteSize the size, in bytes, of the persistent memory blocks to be served by the allocation class
+     * @throws IllegalArgumentException if {@code byteSize} is not positive
+     * @throws HeapException if the allocation class could not be registered
+     */
+    public synchronized void registerAllocationClass(long byteSize) {
+        if (byteSize <= 0) throw new IllegalArgumentException("The allocation class size must be positive");
+        if (hasAllocationClass(byteSize)) return;
+        int unitsPerBlock = (int)Math.max(1, Math.min(MAX_UNITS_PER_BLOCK, ALLOCATION_CLASS_BLOCK_SIZE / byteSize));
+        int classId = nativeRegisterAllocationClass0(poolAddress, byteSize, unitsPerBlock);
+        if (classId < 0) throw new HeapException("Unable to register allocation class of " + byteSize + " bytes in heap " + path);
+        allocationClasses = allocationClasses.with(byteSize, nativeClassIdFlag(classId));
+    }
+
+    boolean hasAllocationClass(long byteSize) {
+        return allocationClasses.flag(byteSize) != AllocationClasses.NO_CLASS;
+    }
+
+    /**
+     * Creates {@code count} allocation arenas in this heap and assigns threads to them in round-robin order. Each 
+     * thread is assigned to an arena the first time it allocates from this heap after this call, so that concurrent 
+     * allocations from different threads do not contend on the same arena. Arenas are not stored in the heap; 
+     * they must be created again each time the heap is opened. Calling this method again reassigns threads to the 
+     * first {@code count} arenas created in this heap, creating only those not created by an earlier call, since 
+     * arenas cannot be destroyed. If an arena could not be created, the previous assignment is kept.
+     * @param count the number of arenas to create
+     * @throws IllegalArgumentException if {@code count} is not positive
+     * @throws HeapException if the arenas could not be created
+     */
+    public synchronized void useArenas(int count) {
+        if (count <= 0) throw new IllegalArgumentException("The arena count must be positive");
+        if (createdArenas.length < count) createdArenas = Arrays.copyOf(createdArenas, count);
+        while (createdArenaCount < count) {
+            int id = nativeCreateArena0(poolAddress);
+            if (id < 0) throw new HeapException("Unable to create allocation arena in heap " + path);
+            createdArenas[createdArenaCount++] = id;
+        }
+        // a new array, so that threads pinned to the previous assignment are assigned again
+        arenas = Arrays.copyOf(createdArenas, count);
+    }
+
+    /**
+     * Returns the number of arenas created with {@link #useArenas(int)}.
+     * @return the number of arenas threads are assigned to, or 0 if none were created
+     */
+    public int getArenaCount() {
+        return arenas.length;
+    }
+
+    /**
+     * Returns the id of the arena from which the calling thread allocates in this heap. If arenas were created 
+     * with {@link #useArenas(int)}, the calling thread is assigned to one of them first.
+     * @return the arena id of the calling thread
+     * @throws HeapException if the arena id could not be retrieved
+     */
+    public int getArenaId() {
+        pinThread();
+        int id = nativeGetThreadArena0(poolAddress);
+        if (id < 0) throw new HeapException("Unable to retrieve allocation arena in heap " + path);
+        return id;
+    }
+
+    // assigns the calling thread to one of the created arenas, once per call to useArenas
+    private void pinThread() {
+        int[] ids = arenas;
+        if (ids.length == 0 || pinnedArenas.get() == ids) return;
+        int id = ids[Math.floorMod(nextArena.getAndIncrement(), ids.length)];
+        if (nativeSetThreadArena0(poolAddress, id) != 0) throw new HeapException("Unable to assign thread to allocation arena in heap " + path);
+        pinnedArenas.set(ids);
+    }
+
     /**
      * Stores a reference to a memory segment at the given offset within the supplied segment.  A translation
      * from absolute address to relocatable address will be done in support of reaccessing the reference
@@ -372,6 +540,27 @@ public class PersistentHeap extends LowLevelHeap {
         return segment; 
     }
 
+    /**
+     * Creates new segments that model blocks of persistent memory with the given sizes and resource scope. All 
+     * blocks are allocated with a single call into the native allocator; either all blocks are allocated or none are.
+     * Lifetime of the modeled persistent memory is controled by the close action of the resource scope.
+     * 
+     * @param  byteSizes     the sizes, in bytes, of the persistent memory blocks backing the segments
+     * @param  transactional if true, the allocation will be done in a fail-safe manner
+     * @param  scope         the segment scope
+     * @return               new persistent memory segments, in the order of {@code byteSizes}
+     * @throws OutOfMemoryError if the memory could not be allocated
+     */
+    @Override
+    public MemorySegment[] allocateSegments(long[] byteSizes, boolean transactional, ResourceScope scope) {
+        long[] offsets = allocateAll(byteSizes, transactional);
+        MemorySegment[] segments = new MemorySegment[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            segments[i] = createSegment(MemoryAddress.ofLong(poolAddress + offsets[i]), byteSizes[i], scope);
+        }
+        return segments;
+    }
+
     /**
      * Deallocates a block of memory associated with a memory segment with the given address.
      * @param address the address of the segment
@@ -489,8 +678,29 @@ public class PersistentHeap extends LowLevelHeap {
      */
 	@Override
     public synchronized void setRoot(MemorySegment segment) {
-        if (segment == null) metadata.setRoot(MemoryAddress.NULL, 0L);
-        else metadata.setRoot(transformAddress(segment.address()), segment.byteSize());  
+        MemoryAddress address = segment == null ? MemoryAddress.NULL : transformAddress(segment.address());
+        long size = segment == null ? 0L : segment.byteSize();
+        if (Transaction.isActive()) {
+            // the uncommitted root is not cached; readers load it from the metadata until the transaction ends
+            ROOT.setRelease(this, null);
+            metadata.setRoot(address, size);
+            if (Transaction.onCommitOnce(rootPublication)) {
+                Transaction.onAbort(rootInvalidation);
+                pendingRootUpdates++;
+            }
+        }
+        else {
+            metadata.setRoot(address, size);
+            ROOT.setRelease(this, new Root(address, size));
+        }
+    }
+
+    // Runs once a transaction that set the root has ended. On commit the stored root is published, 
+    // unless another transaction has set it since; on abort the restored root is read again.
+    private synchronized void endRootUpdate(boolean committed) {
+        pendingRootUpdates--;
+        Root current = (committed && pendingRootUpdates == 0) ? new Root(metadata.getUserRoot(), metadata.getUserRootSize()) : null;
+        ROOT.setRelease(this, current);
     }
 
     /**
@@ -514,16 +724,65 @@ public class PersistentHeap extends LowLevelHeap {
      * @return a memory segment stored at the root location, or {@code null} if cleared
      */
     @Override
-    public synchronized MemorySegment getRoot(ResourceScope scope) {
-        long rootSize = metadata.getUserRootSize();
-        MemoryAddress address = metadata.getUserRoot();
-        if (address == MemoryAddress.NULL) return null;
-        return createSegment(reformAddress(address), rootSize, scope);
+    public MemorySegment getRoot(ResourceScope scope) {
+        Root current = (Root)ROOT.getAcquire(this);
+        if (current == null) current = loadRoot();
+        if (current.address == MemoryAddress.NULL) return null;
+        return createSegment(reformAddress(current.address), current.size, scope);
+    }
+
+    // Reads the stored address and size together, excluding a concurrent setRoot. A root set by an 
+    // open transaction is returned but not cached.
+    private synchronized Root loadRoot() {
+        Root current = (Root)ROOT.getAcquire(this);
+        if (current != null) return current;
+        current = new Root(metadata.getUserRoot(), metadata.getUserRootSize());
+        if (pendingRootUpdates == 0) ROOT.setRelease(this, current);
+        return current;
+    }
+
+    // Registered allocation classes as sorted sizes and their pmemobj flags. Registration replaces the 
+    // whole instance, so lookups are plain reads of a primitive array.
+    private static final class AllocationClasses {
+        static final long NO_CLASS = -1;
+        static final AllocationClasses NONE = new AllocationClasses(new long[0], new long[0]);
+
+        private final long[] sizes;
+        private final long[] flags;
+
+        private AllocationClasses(long[] sizes, long[] flags) {
+            this.sizes = sizes;
+            this.flags = flags;
+        }
+
+        long flag(long size) {
+            if (sizes.length == 0) return NO_CLASS;
+            int index = Arrays.binarySearch(sizes, size);
+            return (index < 0) ? NO_CLASS : flags[index];
+        }
+
+        AllocationClasses with(long size, long flag) {
+            int index = -(Arrays.binarySearch(sizes, size) + 1);
+            long[] newSizes = new long[sizes.length + 1];
+            long[] newFlags = new long[flags.length + 1];
+            System.arraycopy(sizes, 0, newSizes, 0, index);
+            System.arraycopy(flags, 0, newFlags, 0, index);
+            newSizes[index] = size;
+            newFlags[index] = flag;
+            System.arraycopy(sizes, index, newSizes, index + 1, sizes.length - index);
+            System.arraycopy(flags, index, newFlags, index + 1, flags.length - index);
+            return new AllocationClasses(newSizes, newFlags);
+        }
     }
 
-    private MemorySegment getRootInternal(MemoryLayout layout) {
-        long offset = getRoot0(layout.byteSize());
-        return createSegment(MemoryAddress.ofLong(poolAddress + offset), layout.byteSize(), ResourceScope.globalScope());
+    private static final class Root {
+        final MemoryAddress address;
+        final long size;
+
+        Root(MemoryAddress address, long size) {
+            this.address = address;
+            this.size = size;
+        }
     }
 
     /**
@@ -550,10 +809,39 @@ public class PersistentHeap extends LowLevelHeap {
 
 
     long allocate(long size, boolean transactional) {
+        pinThread();
         long offset = allocate0(poolAddress(), transactional, size);
         return offset;
     }
 
+    long[] allocateAll(long[] sizes, boolean transactional) {
+        long[] offsets = new long[sizes.length];
+        if (sizes.length == 0) return offsets;
+        long[] classFlags = new long[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            long classFlag = allocationClasses.flag(sizes[i]);
+            if (classFlag != AllocationClasses.NO_CLASS) classFlags[i] = classFlag;
+        }
+        pinThread();
+        if (!transactional) {
+            if (nativeAllocateAll0(poolAddress, sizes, classFlags, offsets, TYPE_NUM, false) != 0)
+                throw new OutOfMemoryError("Unable to allocate " + sizes.length + " blocks in heap " + path);
+        }
+        else {
+            Transaction.run(this, () -> {
+                if (nativeAllocateAll0(poolAddress, sizes, classFlags, offsets, TYPE_NUM, true) != 0)
+                    throw new InternalTransactionException("Transaction aborted.", new OutOfMemoryError("Unable to allocate " + sizes.length + " blocks in heap " + path));
+            });
+        }
+        return offsets;
+    }
+
+    // sets each address to its value when the calling thread's current transaction commits, through the transaction's redo log
+    void publishValues(long[] addresses, long[] values) {
+        if (nativeTxPublishValues0(poolAddress, addresses, values) != 0)
+            throw new InternalTransactionException("Transaction aborted.", new HeapException("Failed to publish buffered writes in heap " + path));
+    }
+
     MemorySegment createSegment(MemoryAddress address, long size, ResourceScope scope) {
         MemorySegment segment = MemorySegment.ofAddress(address, size, scope); 
         return segment;
@@ -586,12 +874,20 @@ public class PersistentHeap extends LowLevelHeap {
     boolean outOfBounds(long offset, long count) {
         if (offset < 0) return true;
         if ((offset + count) >= currentSize) {
-            currentSize = (long)probeHeapSize();
+            updateSize();
             if ((offset + count) >= currentSize) return true;
         }
         return false;
     }
 
+    // Heap size only grows, so concurrent updates need not be serialized; the largest size observed wins.
+    private void updateSize() {
+        long granted = (grantedBase < 0) ? -1 : nativeHeapSizeGranted0(poolAddress);
+        long size = (granted < 0) ? probeHeapSize() : grantedBase + granted;
+        long current = currentSize;
+        while (size > current && !CURRENT_SIZE.weakCompareAndSet(this, current, size)) current = currentSize;
+    }
+
     static int removePool(String path) {
 	   int ret;
         try (ResourceScope scope = ResourceScope.newConfinedScope()) {
@@ -604,9 +900,62 @@ public class PersistentHeap extends LowLevelHeap {
         return ret;
     }
 
+    // Flushes byteCount bytes at address from the CPU caches without waiting for them to reach the media. 
+    // The caller must keep the memory alive and call drain0 before relying on the bytes being persistent.
+    static void flushNoDrain0(long address, long byteCount) {
+        try {
+            pmemFlush.invokeExact((Addressable)MemoryAddress.ofLong(address), byteCount);
+        } catch(Throwable t) {
+            throw new RuntimeException(t.getMessage());
+        }
+    }
+
+    // Copies byteCount bytes between native segments, which may overlap, using non-temporal stores for 
+    // large ranges so the copy bypasses the CPU caches. Without drain the caller must call drain0 before 
+    // relying on the bytes being persistent.
+    static void move0(MemorySegment src, long srcOffset, MemorySegment dst, long dstOffset, long byteCount, boolean drain) {
+        try {
+            MemorySegment source = src.asSlice(srcOffset, byteCount);
+            MemorySegment destination = dst.asSlice(dstOffset, byteCount);
+            if (drain) {
+                MemoryAddress unused = (MemoryAddress)pmemMemmovePersist.invokeExact((Addressable)destination, (Addressable)source, byteCount);
+            } else {
+                MemoryAddress unused = (MemoryAddress)pmemMemmoveNodrain.invokeExact((Addressable)destination, (Addressable)source, byteCount);
+            }
+        } catch(IndexOutOfBoundsException e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new RuntimeException(t.getMessage());
+        }
+    }
+
+    // fills byteCount bytes of a native segment as move0 copies them
+    static void fill0(MemorySegment dst, long dstOffset, byte value, long byteCount, boolean drain) {
+        try {
+            MemorySegment destination = dst.asSlice(dstOffset, byteCount);
+            if (drain) {
+                MemoryAddress unused = (MemoryAddress)pmemMemsetPersist.invokeExact((Addressable)destination, (int)value, byteCount);
+            } else {
+                MemoryAddress unused = (MemoryAddress)pmemMemsetNodrain.invokeExact((Addressable)destination, (int)value, byteCount);
+            }
+        } catch(IndexOutOfBoundsException e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new RuntimeException(t.getMessage());
+        }
+    }
+
+    static void drain0() {
+        try {
+            pmemDrain.invokeExact();
+        } catch(Throwable t) {
+            throw new RuntimeException(t.getMessage());
+        }
+    }
+
+    // the segment's scope is kept alive by the linker for the duration of the downcall
     static void flush0(MemorySegment segment, long offset, long byteCount) {
-        try (ResourceScope scope = ResourceScope.newConfinedScope()) {
-            scope.keepAlive(segment.scope());
+        try {
             if (offset == 0) {
                 pmemPersist.invokeExact((Addressable)segment, byteCount);
             } else {
@@ -658,30 +1007,34 @@ public class PersistentHeap extends LowLevelHeap {
     }
 
     long allocate0(long poolAddress, boolean transactional, long size) {
-        try (var scope = ResourceScope.newConfinedScope()) {
-            var allocator = SegmentAllocator.nativeAllocator(scope);
+        try {
             MemorySegment pmemoid;     
             long ret = 0;
+            long classFlag = allocationClasses.flag(size);
             if (!transactional) {
-                pmemoid = allocator.allocate(pmemOid);     
-                pmemoid.fill((byte)0); //pmemoid is null
-                int result = (int)pmemobjZalloc.invokeExact((Addressable)MemoryAddress.ofLong(poolAddress), (Addressable)pmemoid, size, TYPE_NUM);
+                pmemoid = NativeScratch.oid(); //pmemoid is null
+                int result = (classFlag == AllocationClasses.NO_CLASS)
+                    ? (int)pmemobjZalloc.invokeExact((Addressable)MemoryAddress.ofLong(poolAddress), (Addressable)pmemoid, size, TYPE_NUM)
+                    : (int)pmemobjXalloc.invokeExact((Addressable)MemoryAddress.ofLong(poolAddress), (Addressable)pmemoid, size, TYPE_NUM, ALLOC_ZERO_FLAG | classFlag, (Addressable)MemoryAddress.NULL, (Addressable)MemoryAddress.NULL);
                 if (result == 0) ret = pmemoid.getAtIndex(JAVA_LONG, 1);
                 else throw new OutOfMemoryError("Unable to allocate " + size + " bytes in heap " + path);
             }
             else {
-                pmemoid = Transaction.run(this, () -> {
+                // the offset is read within the body; commit and abort actions run by Transaction.run may reuse the thread's NativeScratch
+                ret = Transaction.run(this, () -> {
                     try {
-                        MemorySegment segment = (MemorySegment)pmemobjTxZalloc.invokeExact(allocator, size, TYPE_NUM);  
+                        SegmentAllocator allocator = NativeScratch.returnAllocator();
+                        MemorySegment segment = (classFlag == AllocationClasses.NO_CLASS)
+                            ? (MemorySegment)pmemobjTxZalloc.invokeExact(allocator, size, TYPE_NUM)
+                            : (MemorySegment)pmemobjTxXalloc.invokeExact(allocator, size, TYPE_NUM, ALLOC_ZERO_FLAG | classFlag);
                         if (oidIsNull(segment)) throw new InternalTransactionException("Transaction aborted.", new OutOfMemoryError("Unable to allocate " + size + " bytes in heap " + path));
-                        return segment;  
+                        return segment.getAtIndex(JAVA_LONG, 1);
                     } catch (TransactionException e) {
                         throw e;
                     } catch(Throwable t) {
                         throw new RuntimeException(t.getMessage());
                     }
                 });
-                ret = pmemoid.getAtIndex(JAVA_LONG, 1);
             }
             return ret;
         } catch (OutOfMemoryError e) {
@@ -693,14 +1046,89 @@ public class PersistentHeap extends LowLevelHeap {
         }
     }
 
+    // Reserved allocations are not visible in the heap until published. The supplied action 
+    // segment records the reservation and must hold ACTION_SIZE bytes.
+    MemorySegment reserveSegment(long byteSize, MemorySegment action, ResourceScope scope) {
+        long offset = reserve0(byteSize, action);
+        return createSegment(MemoryAddress.ofLong(poolAddress + offset), byteSize, scope);
+    }
+
+    long reserve0(long size, MemorySegment action) {
+        pinThread();
+        try {
+            SegmentAllocator allocator = NativeScratch.returnAllocator();
+            long classFlag = allocationClasses.flag(size);
+            long flags = (classFlag == AllocationClasses.NO_CLASS) ? RESERVE_ZERO_FLAG : RESERVE_ZERO_FLAG | classFlag;
+            MemorySegment pmemoid = (MemorySegment)pmemobjXreserve.invokeExact(allocator, (Addressable)MemoryAddress.ofLong(poolAddress), (Addressable)action, size, TYPE_NUM, flags);
+            if (oidIsNull(pmemoid)) throw new OutOfMemoryError("Unable to allocate " + size + " bytes in heap " + path);
+            return pmemoid.getAtIndex(JAVA_LONG, 1);
+        } catch (OutOfMemoryError e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t.getMessage());
+        }
+    }
+
+    // records a deferred 8-byte store of value into the target segment, applied when published
+    void setValue(MemorySegment action, MemorySegment target, long value) {
+        checkRange(target, 0, Long.BYTES);
+        try {
+            pmemobjSetValue.invokeExact((Addressable)MemoryAddress.ofLong(poolAddress), (Addressable)action, (Addressable)target, value);
+        } catch (Throwable t) {
+            throw new RuntimeException(t.getMessage());
+        }
+    }
+
+    // Applies one of the pmemobj lock functions to the PMEMmutex or PMEMrwlock at the start of lock and 
+    // returns its error number. pmemobj reinitializes a lock on first use after the pool is opened.
+    int lockOperation(MethodHandle operation, MemorySegment lock) {
+        try {
+            return (int)operation.invokeExact((Addressable)MemoryAddress.ofLong(poolAddress), (Addressable)lock);
+        } catch (Throwable t) {
+            throw new RuntimeException(t.getMessage());
+        }
+    }
+
+    // atomically applies the given actions, as part of the current transaction if one is active
+    void publish(MemorySegment actions, long count) {
+        publish(actions, count, Transaction.isActive());
+    }
+
+    // atomically applies the given actions, as part of the current transaction if transactional is true
+    void publish(MemorySegment actions, long count, boolean transactional) {
+        int ret;
+        try {
+            if (transactional) {
+                ret = (int)pmemobjTxPublish.invokeExact((Addressable)actions, count);
+                if (ret != 0) throw new InternalTransactionException("Transaction aborted.", new HeapException("Failed to publish allocation"));
+            }
+            else {
+                ret = (int)pmemobjPublish.invokeExact((Addressable)MemoryAddress.ofLong(poolAddress), (Addressable)actions, count);
+                if (ret != 0) throw new HeapException("Failed to publish allocation");
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t.getMessage());
+        }
+    }
+
+    void cancel(MemorySegment actions, long count) {
+        try {
+            pmemobjCancel.invokeExact((Addressable)MemoryAddress.ofLong(poolAddress), (Addressable)actions, count);
+        } catch (Throwable t) {
+            throw new RuntimeException(t.getMessage());
+        }
+    }
+
     boolean oidIsNull(MemorySegment oid) {
         return (oid.getAtIndex(JAVA_LONG, 0) == 0 && oid.getAtIndex(JAVA_LONG, 1) == 0);
     }
 
     void free(MemoryAddress address, boolean transactional) {
-        try (var scope = ResourceScope.newConfinedScope()) {
-            var allocator = SegmentAllocator.nativeAllocator(scope);
-            MemorySegment pmemoid = (MemorySegment)pmemobjOid.invokeExact(allocator, (Addressable)address);    
+        try {
+            checkHandle(address.toRawLongValue() - poolAddress);
+            MemorySegment pmemoid = oidCodec.encode(address);
             if (!transactional) {
                 pmemobjFree.invokeExact((Addressable)pmemoid);
             }
@@ -721,16 +1149,13 @@ public class PersistentHeap extends LowLevelHeap {
         }
     }
 
-    private long getRoot0(long layoutSize) {
-        long offset;
-        try (var scope = ResourceScope.newConfinedScope()) {
-            var allocator = SegmentAllocator.nativeAllocator(scope);
-            MemorySegment oid = (MemorySegment)pmemobjRoot.invokeExact(allocator, (Addressable)MemoryAddress.ofLong(poolAddress), layoutSize);    
-            offset = oid.getAtIndex(JAVA_LONG, 1);
+    // the returned oid lives in the calling thread's scratch memory
+    private MemorySegment getRoot0(long layoutSize) {
+        try {
+            return (MemorySegment)pmemobjRoot.invokeExact(NativeScratch.returnAllocator(), (Addressable)MemoryAddress.ofLong(poolAddress), layoutSize);    
         } catch (Throwable t) {
             throw new RuntimeException(t.getMessage());
         }
-        return offset;
     }
 
     long probeHeapSize() {
@@ -749,13 +1174,10 @@ public class PersistentHeap extends LowLevelHeap {
         }
         long min = poolAddress + currentSize;
         long max = poolAddress + maxHeap;
-        try (var scope = ResourceScope.newConfinedScope()) {
-            var allocator = SegmentAllocator.nativeAllocator(scope);
-            MemorySegment oid;
+        try {
             for (long i = max; min < i; i = (max + min) / 2) {
-                oid = (MemorySegment)pmemobjOid.invokeExact(allocator, (Addressable)MemoryAddress.ofLong(i));
-                MemoryAddress poolAddr = (MemoryAddress)pmemobjPoolByOid.invokeExact(oid);
-                if (!oidIsNull(oid) && poolAddr.toRawLongValue() == poolAddress) {
+                MemoryAddress poolAddr = (MemoryAddress)pmemobjPoolByPtr.invokeExact((Addressable)MemoryAddress.ofLong(i));
+                if (poolAddr.toRawLongValue() == poolAddress) {
                     min = i;
                 }
                 else {
@@ -771,4 +1193,15 @@ public class PersistentHeap extends LowLevelHeap {
     static native long nativeMinHeapSize0();
     static native int nativeRemovePoolFlag();
     static native long nativeModeFlag();
+    static native long nativeActionSize();
+    static native long nativeReserveZeroFlag();
+    static native long nativeAllocZeroFlag();
+    static native long nativeClassIdFlag(int classId);
+    static native int nativeRegisterAllocationClass0(long poolAddress, long unitSize, int unitsPerBlock);
+    static native int nativeCreateArena0(long poolAddress);
+    static native int nativeSetThreadArena0(long poolAddress, int arenaId);
+    static native int nativeGetThreadArena0(long poolAddress);
+    static native long nativeHeapSizeGranted0(long poolAddress);
+    static native int nativeTxPublishValues0(long poolAddress, long[] addresses, long[] values);
+    static native int nativeAllocateAll0(long poolAddress, long[] sizes, long[] classFlags, long[] offsets, long typeNum, boolean transactional);
 }
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2022 Intel Corporation
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ *
+ */
+
+package com.intel.pmem.pmul;
+
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import static jdk.incubator.foreign.ValueLayout.*;
+
+/*
+ Pending writes of one thread's current transaction on a buffered heap.
+
+ Writes are kept in DRAM per aligned 8-byte word keyed by its address, together with a mask of the
+ bytes of the word that were written. An element write is made to an image of the words it covers,
+ built in scratch memory from persistent memory and any pending bytes, and exposed to the writer
+ as a slice of the scratch holding exactly the element's bytes, so writes outside of them fail the
+ slice's bounds check. Reads of a range that covers pending words go through the same kind of
+ image, built in a separate scratch that grows to the size of the read, so reads never write to
+ persistent memory. When the transaction's body
+ completes, fully written words are handed to the transaction as pmemobj set-value actions, so the
+ transaction commit persists them in its redo log once and applies them in place. The written bytes
+ of partially written words are written in place under snapshots of exactly those bytes, so bytes
+ of the same word written by other threads are left alone.
+
+ Words never extend beyond the written segment. Writes whose words would, and bulk writes to ranges
+ holding pending words, fall back to snapshotting the range and writing in place.
+*/
+final class RedoBuffer {
+    private static final long WORD = Long.BYTES;
+    private static final long IMAGE_SIZE = 64;
+    private static final int FULL_MASK = 0xFF;
+    // BITS[mask] selects, in a word read in native byte order, the bytes whose bits are set in mask
+    private static final long[] BITS = new long[FULL_MASK + 1];
+
+    static {
+        boolean littleEndian = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+        for (int mask = 0; mask <= FULL_MASK; mask++) {
+            long bits = 0;
+            for (int i = 0; i < WORD; i++) {
+                if ((mask & (1 << i)) != 0) bits |= 0xFFL << (littleEndian ? 8 * i : 8 * (WORD - 1 - i));
+            }
+            BITS[mask] = bits;
+        }
+    }
+
+    private final PersistentHeap heap;
+    private final HashMap<Long, Word> words;
+    private final MemorySegment scratch;
+    private MemorySegment readScratch;
+    private final Runnable publishAction;
+    private final Runnable clearAction;
+    private boolean registered;
+
+    RedoBuffer(PersistentHeap heap) {
+        this.heap = heap;
+        this.words = new HashMap<>();
+        this.scratch = MemorySegment.allocateNative(IMAGE_SIZE, WORD, ResourceScope.newImplicitScope());
+        this.readScratch = MemorySegment.allocateNative(IMAGE_SIZE, WORD, ResourceScope.newImplicitScope());
+        this.publishAction = this::publish;
+        this.clearAction = this::clear;
+    }
+
+    // a pending word; mask has bit i set if byte i of the word, in address order, was written
+    private static final class Word {
+        long value;
+        int mask;
+    }
+
+    boolean isEmpty() {
+        return words.isEmpty();
+    }
+
+    // Returns a segment from which byteCount bytes at offset can be read as if the pending writes
+    // had been applied to target: target itself, or a segment of exactly those bytes, valid until
+    // the next call. See HighLevelHeap.targetOffset.
+    MemorySegment view(MemorySegment target, long offset, long byteCount) {
+        if (words.isEmpty() || !overlaps(target, offset, byteCount)) return target;
+        long address = target.address().toRawLongValue() + offset;
+        long first = address & ~(WORD - 1);
+        long last = (address + byteCount + WORD - 1) & ~(WORD - 1);
+        if (readScratch.byteSize() < last - first) {
+            readScratch = MemorySegment.allocateNative(Math.max(last - first, 2 * readScratch.byteSize()), WORD, ResourceScope.newImplicitScope());
+        }
+        MemorySegment.copy(target, offset, readScratch, address - first, byteCount);
+        if ((last - first) / WORD > words.size()) {
+            for (Map.Entry<Long, Word> entry : words.entrySet()) {
+                long word = entry.getKey();
+                if (word >= first && word < last) overlay(readScratch, word - first, entry.getValue());
+            }
+        }
+        else {
+            for (long word = first; word < last; word += WORD) {
+                Word pending = words.get(word);
+                if (pending != null) overlay(readScratch, word - first, pending);
+            }
+        }
+        return readScratch.asSlice(address - first, byteCount);
+    }
+
+    // Returns the segment through which byteCount bytes at offset within target are written: target
+    // itself, after snapshotting the range, if the covering words do not fit the image, otherwise a
+    // slice of the pending image of exactly those bytes. Must be called within an active transaction and followed
+    // by endWrite with the same arguments once the bytes are written.
+    MemorySegment beginWrite(MemorySegment target, long offset, long byteCount) {
+        long base = target.address().toRawLongValue();
+        long first = (base + offset) & ~(WORD - 1);
+        long last = (base + offset + byteCount + WORD - 1) & ~(WORD - 1);
+        if (!fitsImage(target, first, last)) {
+            materialize(target, offset, byteCount);
+            Transaction.addToTransaction(target, offset, byteCount);
+            return target;
+        }
+        for (long word = first; word < last; word += WORD) {
+            scratch.set(JAVA_LONG, word - first, target.get(JAVA_LONG, word - base));
+            Word pending = words.get(word);
+            if (pending != null) overlay(scratch, word - first, pending);
+        }
+        return scratch.asSlice(base + offset - first, byteCount);
+    }
+
+    // records the bytes of the image written since beginWrite as pending
+    void endWrite(MemorySegment target, long offset, long byteCount) {
+        long base = target.address().toRawLongValue();
+        long start = base + offset;
+        long end = start + byteCount;
+        long first = start & ~(WORD - 1);
+        long last = (end + WORD - 1) & ~(WORD - 1);
+        if (!fitsImage(target, first, last)) return;
+        register();
+        for (long word = first; word < last; word += WORD) {
+            Word pending = words.get(word);
+            if (pending == null) words.put(word, pending = new Word());
+            // bytes of the image outside the written range are either pending already or masked out
+            pending.value = scratch.get(JAVA_LONG, word - first);
+            pending.mask |= writtenMask(word, start, end);
+        }
+    }
+
+    private static int writtenMask(long word, long start, long end) {
+        int from = (int)Math.max(0, start - word);
+        int to = (int)Math.min(WORD, end - word);
+        return ((1 << to) - 1) & ~((1 << from) - 1);
+    }
+
+    private static void overlay(MemorySegment image, long wordOffset, Word pending) {
+        long bits = BITS[pending.mask];
+        long value = image.get(JAVA_LONG, wordOffset);
+        image.set(JAVA_LONG, wordOffset, (value & ~bits) | (pending.value & bits));
+    }
+
+    private boolean fitsImage(MemorySegment target, long first, long last) {
+        long base = target.address().toRawLongValue();
+        return first >= base && last <= base + target.byteSize() && last - first <= IMAGE_SIZE;
+    }
+
+    // Writes pending bytes within the range in place, under snapshots, and drops them from the buffer.
+    // Only called on write paths.
+    void materialize(MemorySegment target, long offset, long byteCount) {
+        if (words.isEmpty()) return;
+        long base = target.address().toRawLongValue();
+        long start = (base + offset) & ~(WORD - 1);
+        long end = base + offset + byteCount;
+        if ((end - start) / WORD <= words.size()) {
+            for (long word = start; word < end; word += WORD) {
+                Word pending = words.remove(word);
+                if (pending != null) writeInPlace(target, word - base, pending);
+            }
+        }
+        else {
+            Iterator<Map.Entry<Long, Word>> iterator = words.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, Word> entry = iterator.next();
+                long word = entry.getKey();
+                if (word < start || word >= end) continue;
+                writeInPlace(target, word - base, entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    // writes the written bytes of a pending word, each run of them under its own snapshot
+    private static void writeInPlace(MemorySegment target, long wordOffset, Word pending) {
+        if (pending.mask == FULL_MASK) {
+            Transaction.addToTransaction(target, wordOffset, WORD);
+            target.set(JAVA_LONG, wordOffset, pending.value);
+            return;
+        }
+        int mask = pending.mask;
+        while (mask != 0) {
+            int from = Integer.numberOfTrailingZeros(mask);
+            int to = from + Integer.numberOfTrailingZeros(~(mask >>> from));
+            Transaction.addToTransaction(target, wordOffset + from, to - from);
+            for (int i = from; i < to; i++) {
+                long bits = BITS[1 << i];
+                target.set(JAVA_BYTE, wordOffset + i, (byte)((pending.value & bits) >>> Long.numberOfTrailingZeros(bits)));
+            }
+            mask &= ~(((1 << (to - from)) - 1) << from);
+        }
+    }
+
+    private boolean overlaps(MemorySegment target, long offset, long byteCount) {
+        long address = target.address().toRawLongValue() + offset;
+        long first = address & ~(WORD - 1);
+        long last = address + byteCount;
+        if ((last - first) / WORD > words.size()) {
+            for (long word : words.keySet()) {
+                if (word >= first && word < last) return true;
+            }
+            return false;
+        }
+        for (long word = first; word < last; word += WORD) {
+            if (words.containsKey(word)) return true;
+        }
+        return false;
+    }
+
+    private void register() {
+        if (registered) return;
+        registered = true;
+        Transaction.onPrepare(publishAction);
+        Transaction.onCommit(clearAction);
+        Transaction.onAbort(clearAction);
+    }
+
+    private void publish() {
+        if (words.isEmpty()) return;
+        int full = 0;
+        for (Word pending : words.values()) if (pending.mask == FULL_MASK) full++;
+        long[] addresses = new long[full];
+        long[] values = new long[full];
+        int i = 0;
+        for (Map.Entry<Long, Word> entry : words.entrySet()) {
+            Word pending = entry.getValue();
+            if (pending.mask == FULL_MASK) {
+                addresses[i] = entry.getKey();
+                values[i] = pending.value;
+                i++;
+            }
+            else {
+                writeInPlace(MemorySegment.ofAddress(MemoryAddress.ofLong(entry.getKey()), WORD, ResourceScope.globalScope()), 0, pending);
+            }
+        }
+        if (full > 0) heap.publishValues(addresses, values);
+    }
+
+    private void clear() {
+        words.clear();
+        registered = false;
+    }
+}
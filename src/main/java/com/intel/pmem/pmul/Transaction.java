@@ -8,13 +8,17 @@
 package com.intel.pmem.pmul;
 
 import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 import java.util.function.Supplier;
 import jdk.incubator.foreign.Addressable;
 import jdk.incubator.foreign.CLinker;
 import jdk.incubator.foreign.FunctionDescriptor;
 import jdk.incubator.foreign.MemoryAddress;
 import jdk.incubator.foreign.MemorySegment;
-import jdk.incubator.foreign.ResourceScope;
 import jdk.incubator.foreign.SymbolLookup;
 import static jdk.incubator.foreign.ValueLayout.*;
 
@@ -30,6 +34,14 @@ class Transaction {
     private State state; 
     private int depth;
     private long poolAddress;
+    private ArrayList<Runnable> prepareActions;
+    private ArrayList<Runnable> commitActions;
+    private ArrayList<Runnable> abortActions;
+    // snapshotted address ranges, start -> end, disjoint and non-adjacent; the most recently 
+    // snapshotted range is kept in lastStart and lastEnd rather than in ranges
+    private TreeMap<Long, Long> ranges;
+    private long lastStart;
+    private long lastEnd;
 
     static final MethodHandle pmemobjTxBegin;
     static final MethodHandle pmemobjTxEnd;
@@ -65,11 +77,7 @@ class Transaction {
     }
 
     static <T> T run(LowLevelHeap heap, Supplier<T> body) {
-        Transaction transaction = tlTransaction.get();
-        if (transaction == null || transaction.state != State.Active) {
-            tlTransaction.set(transaction = new Transaction(heap));
-        }
-        return transaction.run(body);
+        return current(heap).run(body);
     }
 
     void run(Runnable body) {
@@ -77,6 +85,64 @@ class Transaction {
     }
 
     private <T> T run(Supplier<T> body) {
+        enter();
+        T result = null;
+        try {
+            result = body.get();
+            prepare();
+        }
+        catch (Throwable t) {
+            fail0(t);
+            throw t;
+        }
+        exit();
+        return result;
+    }
+
+    // Begins a transaction on heap, or joins the calling thread's active transaction, without a body. 
+    // Must be followed by a call to end, or to fail if the work done within the transaction throws.
+    static void begin(LowLevelHeap heap) {
+        current(heap).enter();
+    }
+
+    // completes work started with begin, committing the transaction if the work is outermost
+    static void end() {
+        Transaction transaction = tlTransaction.get();
+        try {
+            transaction.prepare();
+        }
+        catch (Throwable t) {
+            transaction.fail0(t);
+            throw t;
+        }
+        transaction.exit();
+    }
+
+    // completes work started with begin that threw t, aborting the transaction; the caller rethrows t
+    static void fail(Throwable t) {
+        tlTransaction.get().fail0(t);
+    }
+
+    // the calling thread's active transaction, or a new one, reusing the thread's finished transaction if possible
+    private static Transaction current(LowLevelHeap heap) {
+        Transaction transaction = tlTransaction.get();
+        if (transaction != null && transaction.state == State.Active) return transaction;
+        if (transaction != null && transaction.depth == 0 && transaction.heap == heap) transaction.reset();
+        else tlTransaction.set(transaction = new Transaction(heap));
+        return transaction;
+    }
+
+    private void reset() {
+        state = State.New;
+        prepareActions = null;
+        commitActions = null;
+        abortActions = null;
+        if (ranges != null) ranges.clear();
+        lastStart = 0;
+        lastEnd = 0;
+    }
+
+    private void enter() {
         if (state == State.New) {
             int err = startTransaction(poolAddress);
             if (err != 0) throw new TransactionException("Failed to start transaction.");
@@ -84,53 +150,152 @@ class Transaction {
         }
         checkActive();
         depth++;
-        T result = null;
+    }
+
+    private void prepare() {
+        if (depth == 1 && state == State.Active) runActions(prepareActions);
+    }
+
+    // Throws in place of t if t reports a failure of the native transaction, which has then 
+    // already been aborted. Otherwise the transaction is aborted here and the caller rethrows t.
+    private void fail0(Throwable t) {
         try {
-            result = body.get();
-        }
-        catch (InternalTransactionException e) {
-            if (state == State.Active) {
-               state = State.Aborted; 
-                if (e.getCause() != null) {
-                    try{ throw e.getCause(); }
-                    catch (RuntimeException r) { throw e; }
-                    catch (OutOfMemoryError o) { throw o; }
-                    catch (Throwable throwable) { throw new RuntimeException(throwable.getMessage()); }
+            if (t instanceof InternalTransactionException) {
+                if (state == State.Active) {
+                    state = State.Aborted;
+                    Throwable cause = t.getCause();
+                    if (cause instanceof OutOfMemoryError) throw (OutOfMemoryError)cause;
+                    if (cause != null && !(cause instanceof RuntimeException)) throw new RuntimeException(cause.getMessage());
                 }
             }
-            throw e;
-        }
-        catch (Throwable t) {
-            if (state == State.Active) { 
-                abortTransaction(); 
+            else if (state == State.Active) {
+                abortTransaction();
                 state = State.Aborted;
             }
-            throw t;
         }
         finally {
-            if (state == Transaction.State.Active && depth == 1) {
-                state = State.Committed;
-                commitTransaction();
-                int err = endTransaction();            
-                if (err != 0) throw new TransactionException("Failed to end transaction.");
-            }
-            if (state == Transaction.State.Aborted && depth == 1) {
-                // error code will be non zero to reflect the cause of the aborted transaction
-                int err = endTransaction();            
-            }
-            depth--;
+            exit();
+        }
+    }
+
+    private void exit() {
+        if (--depth > 0) return;
+        if (state == State.Active) {
+            state = State.Committed;
+            commitTransaction();
+            int err = endTransaction();
+            if (err != 0) throw new TransactionException("Failed to end transaction.");
+            runActions(commitActions);
+        }
+        else if (state == State.Aborted) {
+            // error code will be non zero to reflect the cause of the aborted transaction
+            endTransaction();
+            runActions(abortActions);
         }
-        return result;
     }
 
     static void addToTransaction(MemorySegment segment, long offset, long byteCount) {
         Transaction tx = tlTransaction.get();
         if (tx == null) throw new TransactionException("No transaction active");
         tx.checkActive();
+        tx.snapshot(segment, offset, byteCount);
+    }
+
+    // Snapshots only the parts of the range not already snapshotted in this transaction. Exactly the 
+    // requested bytes are snapshotted, so an abort never restores bytes this transaction did not write, 
+    // which other threads may have updated in the meantime. Overlapping and adjacent ranges are merged 
+    // in the bookkeeping, so writes to consecutive fields are checked against a single range.
+    private void snapshot(MemorySegment segment, long offset, long byteCount) {
+        Objects.checkFromIndexSize(offset, byteCount, segment.byteSize());
+        if (byteCount == 0) return;
+        long base = segment.address().toRawLongValue();
+        long start = base + offset;
+        long end = start + byteCount;
+        if (start >= lastStart && end <= lastEnd) return;
+        if (lastEnd > lastStart) {
+            if (ranges == null) ranges = new TreeMap<>();
+            ranges.put(lastStart, lastEnd);
+        }
+        long mergedStart = start;
+        long mergedEnd = end;
+        long cursor = start;
+        if (ranges != null && !ranges.isEmpty()) {
+            Map.Entry<Long, Long> floor = ranges.floorEntry(start);
+            if (floor != null && floor.getValue() >= start) {
+                if (floor.getValue() >= end) {
+                    lastStart = lastEnd = 0;
+                    return;
+                }
+                mergedStart = floor.getKey();
+                cursor = floor.getValue();
+                ranges.remove(floor.getKey());
+            }
+            Iterator<Map.Entry<Long, Long>> overlapping = ranges.subMap(start, true, end, true).entrySet().iterator();
+            while (overlapping.hasNext()) {
+                Map.Entry<Long, Long> range = overlapping.next();
+                if (range.getKey() > cursor) addRange(segment, cursor - base, range.getKey() - cursor);
+                cursor = Math.max(cursor, range.getValue());
+                mergedEnd = Math.max(mergedEnd, range.getValue());
+                overlapping.remove();
+            }
+        }
+        if (cursor < end) addRange(segment, cursor - base, end - cursor);
+        lastStart = mergedStart;
+        lastEnd = mergedEnd;
+    }
+
+    private static void addRange(MemorySegment segment, long offset, long byteCount) {
         int err = addToTransaction(segment.asSlice(offset, byteCount));
         if (err != 0) throw new InternalTransactionException("Failed to add byte range to transaction: " + segment + ", byteCount: " + byteCount);
     }
 
+    static boolean isActive() {
+        Transaction tx = tlTransaction.get();
+        return tx != null && tx.state == State.Active;
+    }
+
+    // registers work to be done within the current transaction, once its outermost body has completed
+    static void onPrepare(Runnable action) {
+        Transaction tx = tlTransaction.get();
+        if (tx == null) throw new TransactionException("No transaction active");
+        tx.checkActive();
+        if (tx.prepareActions == null) tx.prepareActions = new ArrayList<>();
+        tx.prepareActions.add(action);
+    }
+
+    // registers volatile work to be done once the current transaction has committed
+    static void onCommit(Runnable action) {
+        Transaction tx = tlTransaction.get();
+        if (tx == null) throw new TransactionException("No transaction active");
+        tx.checkActive();
+        if (tx.commitActions == null) tx.commitActions = new ArrayList<>();
+        tx.commitActions.add(action);
+    }
+
+    // registers action as onCommit does, unless already registered; returns true if registered by this call
+    static boolean onCommitOnce(Runnable action) {
+        Transaction tx = tlTransaction.get();
+        if (tx == null) throw new TransactionException("No transaction active");
+        tx.checkActive();
+        if (tx.commitActions != null && tx.commitActions.contains(action)) return false;
+        onCommit(action);
+        return true;
+    }
+
+    // registers volatile work to be done once the current transaction has aborted
+    static void onAbort(Runnable action) {
+        Transaction tx = tlTransaction.get();
+        if (tx == null) throw new TransactionException("No transaction active");
+        tx.checkActive();
+        if (tx.abortActions == null) tx.abortActions = new ArrayList<>();
+        tx.abortActions.add(action);
+    }
+
+    private static void runActions(ArrayList<Runnable> actions) {
+        if (actions == null) return;
+        for (Runnable action : actions) action.run();
+    }
+
     private void checkActive() {
         if (state != State.Active) throw new IllegalStateException("Transaction not Active");
     }
@@ -184,10 +349,10 @@ class Transaction {
         }
     }
     
+    // the segment's scope is kept alive by the linker for the duration of the downcall
     static int addToTransaction(MemorySegment segment){
         int ret = 0;
-        try (ResourceScope scope = ResourceScope.newConfinedScope()){
-            scope.keepAlive(segment.scope());
+        try {
             ret = (int)pmemobjTxAddRangeDirect.invokeExact((Addressable)segment, segment.byteSize());
         } catch(Throwable t) {
             throw new RuntimeException("Error code "+ret+" "+t.getMessage());
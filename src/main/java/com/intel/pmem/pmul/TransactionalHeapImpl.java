@@ -8,9 +8,8 @@
 package com.intel.pmem.pmul;
 
 import java.io.IOException;
-import java.lang.invoke.MethodHandle;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import jdk.incubator.foreign.MemorySegment;
@@ -18,6 +17,7 @@ import jdk.incubator.foreign.ResourceScope;
 import jdk.incubator.foreign.ValueLayout;
 
 class TransactionalHeapImpl extends HighLevelHeap implements Heap {
+    private volatile GroupCommitter committer;
 
     public TransactionalHeapImpl(Path path, long size) throws IOException {
         super(Heap.Kind.TRANSACTIONAL, PersistentHeap.create(path, size, Heap.Kind.TRANSACTIONAL), true);
@@ -31,9 +31,13 @@ class TransactionalHeapImpl extends HighLevelHeap implements Heap {
         super(Heap.Kind.TRANSACTIONAL, lowLevelHeap, false);
     }
 
+    TransactionalHeapImpl(Heap.Kind kind, LowLevelHeap lowLevelHeap, boolean create) throws IOException {
+        super(kind, lowLevelHeap, create);
+    }
+
     @Override
     public Allocation allocate(long byteSize, ResourceScope scope) {
-        return super.createAllocation(lowLevelHeap.allocateSegment(byteSize, true, scope));
+        return super.createAllocation(allocateSegment(byteSize, true, scope));
     }
 
     @Override
@@ -49,14 +53,30 @@ class TransactionalHeapImpl extends HighLevelHeap implements Heap {
 
     private Allocation initializeAllocation(Allocation allocation, Consumer<Allocation> initializer) {
         beginInFlightSegment(allocation.segment());
-        initializer.accept(allocation);
-        endInFlightSegment();
+        try {
+            initializer.accept(allocation);
+        }
+        finally {
+            endInFlightSegment();
+        }
         return allocation;
     }
 	
+    @Override
+    public Allocation[] allocateAll(long[] byteSizes, ResourceScope scope) {
+        return Transaction.run(lowLevelHeap, () -> {
+            return createAllocations(lowLevelHeap.allocateSegments(byteSizes, true, scope));
+        });
+    }
+
+    @Override
+    public Allocation allocateReserved(long byteSize, ResourceScope scope, Consumer<Allocation> initializer, Allocation parent, long referenceOffset) {
+        return reserveAllocation(byteSize, scope, initializer, parent, referenceOffset);
+    }
+
     @Override
     public void free(AllocationAddress address) {
-        lowLevelHeap.freeSegment(address.address(), true);
+        freeSegment(address.address(), true);
     }
     
     @Override
@@ -75,13 +95,36 @@ class TransactionalHeapImpl extends HighLevelHeap implements Heap {
         return ans;
     }        
 
+    @Override
+    <T> CompletableFuture<T> executeAsync(Supplier<T> body) {
+        GroupCommitter groupCommitter = committer;
+        if (groupCommitter == null) {
+            synchronized (this) {
+                if (committer == null) committer = new GroupCommitter(lowLevelHeap);
+                groupCommitter = committer;
+            }
+        }
+        return groupCommitter.submit(body);
+    }
+
+    @Override
+    void close() {
+        GroupCommitter groupCommitter = committer;
+        if (groupCommitter != null) groupCommitter.close();
+        super.close();
+    }
+
     @Override
     public void execute(Allocation allocation, Runnable body) {
         Transaction.run(lowLevelHeap, () -> {
             Transaction.addToTransaction(allocation.segment(), 0, allocation.segment().byteSize());
             beginInFlightSegment(allocation.segment());
-            body.run();
-            endInFlightSegment();
+            try {
+                body.run();
+            }
+            finally {
+                endInFlightSegment();
+            }
         });
     }
 
@@ -122,83 +165,47 @@ class TransactionalHeapImpl extends HighLevelHeap implements Heap {
     }
 
     @Override
-    void set(Consumer<MemorySegment> body, MethodHandle byteOffsetHandle, long elementSize, MemorySegment segment) {
-        long byteOffset;
+    MemorySegment beginWrite(MemorySegment segment, long byteOffset, long elementSize) {
+        Transaction.begin(lowLevelHeap);
         try {
-            byteOffset = (long)byteOffsetHandle.invokeExact();
-        }
-        catch (RuntimeException e) {
-            throw e;
+            if (!segmentIsInFlight(segment)) Transaction.addToTransaction(segment, byteOffset, elementSize);
         }
         catch (Throwable t) {
-            throw new RuntimeException(t);
+            Transaction.fail(t);
+            throw t;
         }
-        Transaction.run(lowLevelHeap, () -> {
-            if (!segmentIsInFlight(segment)) Transaction.addToTransaction(segment, byteOffset, elementSize);
-            body.accept(segment);
-        });
+        return segment;
     }
 
     @Override
-    void set(Consumer<MemorySegment> body, MethodHandle byteOffsetHandle, long elementSize, MemorySegment segment, long index) {
-        long byteOffset;
-        try {
-            byteOffset = (long)byteOffsetHandle.invokeExact(index);
-        }
-        catch (RuntimeException e) {
-            throw e;
-        }
-        catch (Throwable t) {
-            throw new RuntimeException(t);
-        }
-        Transaction.run(lowLevelHeap, () -> {
-            if (!segmentIsInFlight(segment)) Transaction.addToTransaction(segment, byteOffset, elementSize);
-            body.accept(segment);
-        });
+    void endWrite(MemorySegment segment, long byteOffset, long elementSize) {
+        Transaction.end();
     }
 
     @Override
-    void set(Consumer<MemorySegment> body, MethodHandle byteOffsetHandle, long elementSize, MemorySegment segment, long index1, long index2) {
-        long byteOffset;
-        try {
-            byteOffset = (long)byteOffsetHandle.invokeExact(index1, index2);
-        }
-        catch (RuntimeException e) {
-            throw e;
-        }
-        catch (Throwable t) {
-            throw new RuntimeException(t);
-        }
-        Transaction.run(lowLevelHeap, () -> {
-            if (!segmentIsInFlight(segment)) Transaction.addToTransaction(segment, byteOffset, elementSize);
-            body.accept(segment);
-        });
+    void abortWrite(Throwable t) {
+        Transaction.fail(t);
     }
 
+    // Atomic operations act in place outside of the undo log and are persisted when they complete, since 
+    // undoing one on abort would overwrite the results of other threads' operations on the element. They 
+    // are not valid within a transaction, except on allocations made by that transaction, which no other 
+    // thread can see and which are written as part of it.
     @Override
-    void set(Consumer<MemorySegment> body, MethodHandle byteOffsetHandle, long elementSize, Object... args) {
-        long byteOffset;
-        try {
-            byteOffset = (long)byteOffsetHandle.invokeWithArguments(Arrays.copyOfRange(args, 1, args.length - 1));
-        }
-        catch (RuntimeException e) {
-            throw e;
-        }
-        catch (Throwable t) {
-            throw new RuntimeException(t);
-        }
-        MemorySegment segment = ((Allocation)args[0]).segment();
-        Transaction.run(lowLevelHeap, () -> {
-            if (!segmentIsInFlight(segment)) Transaction.addToTransaction(segment, byteOffset, elementSize);
-            body.accept(segment);
-        });
+    MemorySegment beginAtomicWrite(MemorySegment segment, long byteOffset, long elementSize) {
+        if (!Transaction.isActive()) return segment;
+        if (!segmentIsInFlight(segment)) throw new IllegalStateException("Atomic operations are not valid within a transaction");
+        return beginWrite(segment, byteOffset, elementSize);
     }
 
     @Override
-    void setAtOffset(Consumer<MemorySegment> body, long elementSize, MemorySegment segment, long offset) {
-        Transaction.run(lowLevelHeap, () -> {
-            if (!segmentIsInFlight(segment)) Transaction.addToTransaction(segment, offset, elementSize);
-            body.accept(segment);
-        });
+    void endAtomicWrite(MemorySegment segment, long byteOffset, long elementSize) {
+        if (Transaction.isActive()) endWrite(segment, byteOffset, elementSize);
+        else lowLevelHeap.flush(segment, byteOffset, elementSize);
+    }
+
+    @Override
+    void abortAtomicWrite(Throwable t) {
+        if (Transaction.isActive()) abortWrite(t);
     }
 }
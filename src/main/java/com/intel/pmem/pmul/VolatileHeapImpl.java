@@ -8,10 +8,10 @@
 package com.intel.pmem.pmul;
 
 import java.io.IOException;
-import java.lang.invoke.MethodHandle;
 import java.nio.file.Path;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
+import jdk.incubator.foreign.MemoryLayout;
 import jdk.incubator.foreign.MemorySegment;
 import jdk.incubator.foreign.ResourceScope;
 import jdk.incubator.foreign.ValueLayout;
@@ -39,11 +39,34 @@ class VolatileHeapImpl extends HighLevelHeap implements Heap {
         return allocation;
     }
 
+    @Override
+    public Allocation[] allocateAll(long[] byteSizes, ResourceScope scope) {
+        return createAllocations(lowLevelHeap.allocateSegments(byteSizes, false, scope));
+    }
+
+    @Override
+    public Allocation allocateReserved(long byteSize, ResourceScope scope, Consumer<Allocation> initializer, Allocation parent, long referenceOffset) {
+        if (parent.heap() != this) throw new IllegalArgumentException("The parent allocation must belong to this heap");
+        Allocation allocation = initializeAllocation(byteSize, scope, initializer);
+        parent.setReference(referenceOffset, allocation);
+        return allocation;
+    }
+
     @Override
     public void free(AllocationAddress address) {
         lowLevelHeap.freeSegment(address.address(), false);
     }
     
+    @Override
+    public void useAllocationBuffers(boolean enabled) {
+        // memkind already serves small allocations from per-thread caches
+    }
+
+    @Override
+    public void registerAllocationClass(MemoryLayout layout) {
+        // memkind size classes are fixed
+    }
+
     @Override
     public void setRoot(Allocation allocation) {
         rootAllocation = allocation;
@@ -93,67 +116,15 @@ class VolatileHeapImpl extends HighLevelHeap implements Heap {
     }
 
     @Override
-    public void set(Consumer<MemorySegment> body, MethodHandle byteOffsetHandle, long elementSize, MemorySegment segment) {
-        try {
-            body.accept(segment);
-        }
-        catch (RuntimeException e) {
-            throw e;
-        }
-        catch (Throwable t) {
-            throw new RuntimeException(t);
-        }
-    }
-
-    @Override
-    public void set(Consumer<MemorySegment> body, MethodHandle byteOffsetHandle, long elementSize, MemorySegment segment, long index) {
-        try {
-            body.accept(segment);
-        }
-        catch (RuntimeException e) {
-            throw e;
-        }
-        catch (Throwable t) {
-            throw new RuntimeException(t);
-        }
-    }
-
-    @Override
-    public void set(Consumer<MemorySegment> body, MethodHandle byteOffsetHandle, long elementSize, MemorySegment segment, long index1, long index2) {
-        try {
-            body.accept(segment);
-        }
-        catch (RuntimeException e) {
-            throw e;
-        }
-        catch (Throwable t) {
-            throw new RuntimeException(t);
-        }
-    }
-
-    @Override
-    public void set(Consumer<MemorySegment> body, MethodHandle byteOffsetHandle, long elementSize, Object... args) {
-        try {
-            body.accept(((Allocation)args[0]).segment());
-        }
-        catch (RuntimeException e) {
-            throw e;
-        }
-        catch (Throwable t) {
-            throw new RuntimeException(t);
-        }
-    }
-
-    @Override
-    void setAtOffset(Consumer<MemorySegment> body, long elementSize, MemorySegment segment, long offset) {
-        try {
-            body.accept(segment);
-        }
-        catch (RuntimeException e) {
-            throw e;
-        }
-        catch (Throwable t) {
-            throw new RuntimeException(t);
-        }
+    MemorySegment beginWrite(MemorySegment segment, long byteOffset, long elementSize) {
+        return segment;
+    }
+
+    @Override
+    void endWrite(MemorySegment segment, long byteOffset, long elementSize) {
+    }
+
+    @Override
+    void abortWrite(Throwable t) {
     }
 }
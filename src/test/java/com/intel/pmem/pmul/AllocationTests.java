@@ -8,6 +8,7 @@
 package com.intel.pmem.pmul;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.stream.StreamSupport;
 import jdk.incubator.foreign.MemoryAddress;
@@ -17,9 +18,12 @@ import jdk.incubator.foreign.ResourceScope;
 import jdk.incubator.foreign.SequenceLayout;
 import jdk.incubator.foreign.ValueLayout;
 import org.testng.Assert;
+import org.testng.SkipException;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
+import static jdk.incubator.foreign.MemoryLayout.PathElement.*;
 import static jdk.incubator.foreign.ValueLayout.*;
 
 @Test(singleThreaded = true)
@@ -1477,4 +1481,98 @@ public class AllocationTests {
         }
         copy.free();
     }
+
+    @DataProvider(name = "persistentKinds")
+    public Object[][] persistentKinds() {
+        return new Object[][] {{Heap.Kind.DURABLE}, {Heap.Kind.TRANSACTIONAL}};
+    }
+
+    @DataProvider(name = "heapKinds")
+    public Object[][] heapKinds() {
+        return new Object[][] {{Heap.Kind.VOLATILE}, {Heap.Kind.DURABLE}, {Heap.Kind.TRANSACTIONAL}, {Heap.Kind.BUFFERED}};
+    }
+
+    @Test(dataProvider = "heapKinds")
+    public void testAtomicOperations(Heap.Kind kind) {
+        heap = TestVars.createHeap(kind);
+        allocation = heap.allocate(64, ResourceScope.globalScope());
+        Allocation target = heap.allocate(8, ResourceScope.globalScope());
+        Accessor longs = Accessor.of(MemoryLayout.sequenceLayout(4, JAVA_LONG), sequenceElement());
+        Accessor ints = Accessor.of(MemoryLayout.sequenceLayout(8, JAVA_INT), sequenceElement());
+        Accessor references = Accessor.of(MemoryLayout.sequenceLayout(4, ADDRESS), sequenceElement());
+        Assert.assertTrue(longs.compareAndSet(allocation, 0, 0L, 10L));
+        Assert.assertFalse(longs.compareAndSet(allocation, 0, 0L, 11L));
+        Assert.assertEquals(longs.getAndAdd(allocation, 0, 5L), 10L);
+        Assert.assertEquals(longs.getAndSet(allocation, 0, 1L), 15L);
+        Assert.assertEquals(longs.getLong(allocation, 0), 1L);
+        Assert.assertEquals(ints.getAndAdd(allocation, 3, 7), 0);
+        Assert.assertEquals(ints.getAndAdd(allocation, 3, -2), 7);
+        Assert.assertEquals(ints.getInt(allocation, 3), 5);
+        Assert.assertTrue(references.compareAndSetReference(allocation, 2, null, target.address()));
+        Assert.assertFalse(references.compareAndSetReference(allocation, 2, null, target.address()));
+        Assert.assertEquals(references.getAndSetReference(allocation, 2, null), target.address());
+        Assert.assertNull(references.getReference(allocation, 2));
+        target.free();
+    }
+
+    @Test(dataProvider = "persistentKinds")
+    public void testAllocationBuffers(Heap.Kind kind) throws IOException, InterruptedException {
+        if (TestVars.ISDAX) throw new SkipException("Test not valid in DAX mode");
+        heap = TestVars.createHeap(kind);
+        heap.useAllocationBuffers(true);
+        final int threadCount = 4;
+        final int N = 1000;
+        Allocation nodes = heap.allocate(threadCount * N * ADDRESS.byteSize(), ResourceScope.globalScope());
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int first = t * N;
+            threads[t] = new Thread(() -> {
+                for (int i = first; i < first + N; i++) {
+                    final long value = i;
+                    Allocation node = heap.allocate(24, ResourceScope.globalScope(), (Allocation A) -> {
+                        A.set(JAVA_LONG, 16, value);
+                    });
+                    nodes.setReferenceAtIndex(i, node);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        heap.setRoot(nodes);
+        ((HighLevelHeap)heap).close();
+        heap = Heap.open(Path.of(TestVars.HEAP_USER_PATH + TestVars.HEAP_NAME));
+        Allocation reopened = heap.getRoot(ResourceScope.globalScope());
+        long[] addresses = new long[threadCount * N];
+        for (int i = 0; i < threadCount * N; i++) {
+            AllocationAddress address = reopened.getReferenceAtIndex(i);
+            addresses[i] = address.address().toRawLongValue();
+            Allocation node = Allocation.ofAddress(address, 24, ResourceScope.globalScope());
+            Assert.assertEquals(node.get(JAVA_LONG, 16), (long)i);
+        }
+        Assert.assertEquals(Arrays.stream(addresses).distinct().count(), (long)addresses.length);
+        for (int i = 0; i < threadCount * N; i++) Allocation.ofAddress(reopened.getReferenceAtIndex(i), 24, ResourceScope.globalScope()).free();
+    }
+
+    @Test(dataProvider = "persistentKinds")
+    public void testAllocationBuffersReopen(Heap.Kind kind) throws IOException, InterruptedException {
+        if (TestVars.ISDAX) throw new SkipException("Test not valid in DAX mode");
+        heap = TestVars.createHeap(kind);
+        heap.useAllocationBuffers(true);
+        Allocation kept = heap.allocate(24, ResourceScope.globalScope());
+        heap.setRoot(kept);
+        for (int cycle = 0; cycle < 4; cycle++) {
+            Thread thread = new Thread(() -> heap.allocate(24, ResourceScope.globalScope()).free());
+            thread.start();
+            thread.join();
+            Allocation[] allocations = new Allocation[10];
+            for (int i = 0; i < allocations.length; i++) allocations[i] = heap.allocate(24, ResourceScope.globalScope());
+            for (Allocation allocation : allocations) allocation.free();
+            ((HighLevelHeap)heap).close();
+            heap = Heap.open(Path.of(TestVars.HEAP_USER_PATH + TestVars.HEAP_NAME));
+            PersistentHeap lowLevelHeap = (PersistentHeap)((HighLevelHeap)heap).lowLevelHeap;
+            Assert.assertEquals(new AllocationBuffers(lowLevelHeap).allocatedSlots(), 1L);
+            heap.useAllocationBuffers(true);
+        }
+        heap.getRoot(ResourceScope.globalScope()).free();
+    }
 }
@@ -1897,4 +1897,18 @@ public class DurableAccessorTests {
         Assert.assertEquals(referenceL3.getReference(copy, 3, 3, 3), allocation.address());
         copy.free();
     }
+
+    @Test
+    public void testConcurrentGetAndAdd() throws InterruptedException {
+        Accessor counter = Accessor.of(MemoryLayout.sequenceLayout(4, JAVA_LONG), sequenceElement());
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) counter.getAndAdd(l1Slice, 1, 1L);
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) thread.join();
+        Assert.assertEquals(counter.getLong(l1Slice, 1), 4000L);
+    }
 }
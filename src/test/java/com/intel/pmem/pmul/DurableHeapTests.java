@@ -12,6 +12,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
 import jdk.incubator.foreign.GroupLayout;
 import jdk.incubator.foreign.MemoryLayout;
 import jdk.incubator.foreign.ResourceScope;
@@ -187,4 +188,215 @@ public class DurableHeapTests {
         Assert.assertEquals(Heap.Kind.DURABLE, heap.getKind());
     }
 
+    @Test
+    public void testAllocateAll() {
+        heap = TestVars.createDurableHeap();
+        long[] sizes = new long[]{8, 64, 1024, 24, 4096};
+        Allocation[] allocations = heap.allocateAll(sizes, ResourceScope.globalScope());
+        Assert.assertEquals(allocations.length, sizes.length);
+        for (int i = 0; i < sizes.length; i++) {
+            Assert.assertEquals(allocations[i].byteSize(), sizes[i]);
+            Assert.assertEquals(allocations[i].get(ValueLayout.JAVA_LONG, 0), 0L);
+            allocations[i].set(ValueLayout.JAVA_LONG, 0, (long)i);
+        }
+        for (int i = 0; i < sizes.length; i++) {
+            Assert.assertEquals(allocations[i].get(ValueLayout.JAVA_LONG, 0), (long)i);
+            allocations[i].free();
+        }
+    }
+
+    @Test
+    public void testAllocateReserved() {
+        heap = TestVars.createDurableHeap();
+        Allocation parent = heap.allocate(16, ResourceScope.globalScope());
+        Allocation child = heap.allocateReserved(64, ResourceScope.globalScope(), (Allocation a) -> {
+            a.set(ValueLayout.JAVA_LONG, 0, 42L);
+        }, parent, 8);
+        Assert.assertEquals(child.get(ValueLayout.JAVA_LONG, 0), 42L);
+        Assert.assertEquals(parent.getReference(8), child.address());
+        Assert.assertEquals(parent.get(ValueLayout.JAVA_LONG, 0), 0L);
+        child.free();
+        parent.free();
+    }
+
+    @Test
+    public void testAllocateReservedFailedInitializer() {
+        heap = TestVars.createDurableHeap();
+        Allocation parent = heap.allocate(16, ResourceScope.globalScope());
+        try {
+            heap.allocateReserved(64, ResourceScope.globalScope(), (Allocation a) -> {
+                throw new IllegalStateException();
+            }, parent, 0);
+            Assert.fail("IllegalStateException was not thrown");
+        }
+        catch (IllegalStateException e) {
+            Assert.assertEquals(parent.get(ValueLayout.JAVA_LONG, 0), 0L);
+        }
+        parent.free();
+    }
+
+    @Test
+    public void testAllocationClass() {
+        heap = TestVars.createDurableHeap();
+        MemoryLayout node = MemoryLayout.structLayout(ValueLayout.JAVA_LONG.withName("value"), ValueLayout.JAVA_LONG.withName("next"), ValueLayout.JAVA_LONG.withName("prev"));
+        heap.registerAllocationClass(node);
+        heap.registerAllocationClass(node);
+        Allocation first = heap.allocate(node, ResourceScope.globalScope());
+        Allocation second = heap.allocate(node, ResourceScope.globalScope());
+        Assert.assertEquals(first.byteSize(), node.byteSize());
+        Assert.assertEquals(first.get(ValueLayout.JAVA_LONG, 16), 0L);
+        first.set(ValueLayout.JAVA_LONG, 16, 7L);
+        second.set(ValueLayout.JAVA_LONG, 0, 9L);
+        Assert.assertEquals(first.get(ValueLayout.JAVA_LONG, 16), 7L);
+        Assert.assertEquals(second.get(ValueLayout.JAVA_LONG, 0), 9L);
+        first.free();
+        second.free();
+        Allocation[] batch = heap.allocateAll(new long[]{node.byteSize(), 64, node.byteSize()}, ResourceScope.globalScope());
+        Assert.assertEquals(batch[2].byteSize(), node.byteSize());
+        Assert.assertEquals(batch[2].get(ValueLayout.JAVA_LONG, 16), 0L);
+        for (Allocation allocation : batch) allocation.free();
+    }
+
+    @Test
+    public void testAllocationClassBypassesBuffers() {
+        heap = TestVars.createDurableHeap();
+        MemoryLayout node = MemoryLayout.structLayout(ValueLayout.JAVA_LONG.withName("value"), ValueLayout.JAVA_LONG.withName("next"));
+        heap.registerAllocationClass(node);
+        heap.useAllocationBuffers(true);
+        Allocation allocation = heap.allocate(node, ResourceScope.globalScope());
+        Assert.assertFalse(AllocationBuffers.hasChunks(((HighLevelHeap)heap).lowLevelHeap));
+        allocation.free();
+    }
+
+    @Test
+    public void testBatchDefersFlushes() throws IOException {
+        if (TestVars.ISDAX) throw new SkipException("Test not valid in DAX mode");
+        heap = TestVars.createDurableHeap();
+        DeferredFlushes flushes = ((DurableHeapImpl)heap).deferredFlushes();
+        Allocation node = heap.allocate(256, ResourceScope.globalScope());
+        Allocation source = heap.allocate(64, ResourceScope.globalScope());
+        source.fill((byte)3);
+        Accessor.execute(heap, () -> {
+            node.set(ValueLayout.JAVA_LONG, 0, 1L);
+            Assert.assertEquals(flushes.rangeCount(), 0);
+        });
+        Accessor.batch(heap, () -> {
+            for (int i = 0; i < 6; i++) node.set(ValueLayout.JAVA_LONG, i * 8, i);
+            Assert.assertEquals(flushes.rangeCount(), 1);
+            Accessor.batch(heap, () -> {
+                node.set(ValueLayout.JAVA_LONG, 200, 42L);
+                Allocation.copy(source, 0, node, 128, 64);
+            });
+            // the nested batch leaves its lines to the outermost one, merged with each other
+            Assert.assertEquals(flushes.rangeCount(), 2);
+            node.set(ValueLayout.JAVA_LONG, 0, 7L);
+        });
+        Assert.assertEquals(flushes.rangeCount(), 0);
+        Assert.assertEquals(node.get(ValueLayout.JAVA_LONG, 0), 7L);
+        heap.setRoot(node);
+        Accessor.batch(heap, () -> {
+            node.set(ValueLayout.JAVA_LONG, 8, 9L);
+            ((HighLevelHeap)heap).close();
+            Assert.assertEquals(flushes.rangeCount(), 0);
+        });
+        heap = Heap.open(Path.of(TestVars.HEAP_USER_PATH + TestVars.HEAP_NAME));
+        Allocation reopened = heap.getRoot(ResourceScope.globalScope());
+        Assert.assertEquals(reopened.get(ValueLayout.JAVA_LONG, 0), 7L);
+        Assert.assertEquals(reopened.get(ValueLayout.JAVA_LONG, 8), 9L);
+        Assert.assertEquals(reopened.get(ValueLayout.JAVA_LONG, 40), 5L);
+        Assert.assertEquals(reopened.get(ValueLayout.JAVA_BYTE, 191), (byte)3);
+        Assert.assertEquals(reopened.get(ValueLayout.JAVA_LONG, 200), 42L);
+    }
+
+    @Test
+    public void testCloseRejectedDuringOtherBatch() throws InterruptedException {
+        heap = TestVars.createDurableHeap();
+        Allocation node = heap.allocate(64, ResourceScope.globalScope());
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread thread = new Thread(() -> Accessor.batch(heap, () -> {
+            node.set(ValueLayout.JAVA_LONG, 0, 1L);
+            entered.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        thread.start();
+        entered.await();
+        try {
+            Assert.assertThrows(IllegalStateException.class, () -> ((HighLevelHeap)heap).close());
+        }
+        finally {
+            release.countDown();
+            thread.join();
+        }
+        Assert.assertEquals(node.get(ValueLayout.JAVA_LONG, 0), 1L);
+    }
+
+    @Test
+    public void testLargeCopyAndFill() {
+        heap = TestVars.createDurableHeap();
+        long size = 2 * DurableHeapImpl.NON_TEMPORAL_THRESHOLD + 24;
+        Allocation source = heap.allocate(size, ResourceScope.globalScope());
+        Allocation destination = heap.allocate(size, ResourceScope.globalScope());
+        source.fill((byte)5);
+        Assert.assertEquals(source.get(ValueLayout.JAVA_BYTE, size - 1), (byte)5);
+        source.set(ValueLayout.JAVA_LONG, 8, 11L);
+        Allocation.copy(source, 8, destination, 0, size - 8);
+        Assert.assertEquals(destination.get(ValueLayout.JAVA_LONG, 0), 11L);
+        Assert.assertEquals(destination.get(ValueLayout.JAVA_BYTE, size - 9), (byte)5);
+        Accessor.execute(heap, () -> {
+            destination.fill((byte)0);
+            Allocation.copy(source, 0, destination, 16, size - 16);
+        });
+        Assert.assertEquals(destination.get(ValueLayout.JAVA_LONG, 0), 0L);
+        Assert.assertEquals(destination.get(ValueLayout.JAVA_LONG, 24), 11L);
+        source.free();
+        destination.free();
+    }
+
+    @Test
+    public void testLocks() throws IOException, InterruptedException {
+        if (TestVars.ISDAX) throw new SkipException("Test not valid in DAX mode");
+        heap = TestVars.createDurableHeap();
+        GroupLayout layout = MemoryLayout.structLayout(LockAccessor.MUTEX.withName("mutex"), LockAccessor.RWLOCK.withName("rwlock"), ValueLayout.JAVA_LONG.withName("count"));
+        LockAccessor mutex = LockAccessor.ofMutex(layout, groupElement("mutex"));
+        LockAccessor rwlock = LockAccessor.ofReadWriteLock(layout, groupElement("rwlock"));
+        Accessor count = Accessor.of(layout, groupElement("count"));
+        Assert.assertThrows(IllegalArgumentException.class, () -> LockAccessor.ofMutex(layout, groupElement("rwlock")));
+        Assert.assertThrows(IllegalArgumentException.class, () -> LockAccessor.ofReadWriteLock(layout, groupElement("mutex")));
+        Assert.assertThrows(IllegalArgumentException.class, () -> LockAccessor.ofMutex(MemoryLayout.sequenceLayout(64, ValueLayout.JAVA_BYTE)));
+        Allocation node = heap.allocate(layout, ResourceScope.globalScope());
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    mutex.lock(node);
+                    count.set(node, count.getLong(node) + 1);
+                    mutex.unlock(node);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) thread.join();
+        Assert.assertEquals(count.getLong(node), 4000L);
+        Assert.assertThrows(UnsupportedOperationException.class, () -> mutex.readLock(node));
+        rwlock.readLock(node);
+        Assert.assertTrue(rwlock.tryReadLock(node));
+        rwlock.unlock(node);
+        rwlock.unlock(node);
+        Assert.assertTrue(rwlock.tryLock(node));
+        mutex.lock(node);
+        heap.setRoot(node);
+        ((HighLevelHeap)heap).close();
+        heap = Heap.open(Path.of(TestVars.HEAP_USER_PATH + TestVars.HEAP_NAME));
+        Allocation reopened = heap.getRoot(ResourceScope.globalScope());
+        Assert.assertTrue(mutex.tryLock(reopened));
+        Assert.assertTrue(rwlock.tryReadLock(reopened));
+        mutex.unlock(reopened);
+        rwlock.unlock(reopened);
+    }
 }
@@ -92,6 +92,27 @@ public class PersistentHeapTests {
         TestVars.cleanUp(heapPathString);
     }
 
+    @Test
+    public void testGrowableHeapSize() {
+        if (TestVars.ISDAX) throw new SkipException("Test not valid in DAX mode");
+        String heapPathString = TestVars.HEAP_USER_PATH + "/growable";
+        Path heapPath = Path.of(heapPathString);
+        try {
+            Files.createDirectory(heapPath);
+            heap = PersistentHeap.create(heapPath);
+        } catch(HeapException e) {
+            Assert.fail(e.toString());
+        } catch(IOException e) {
+            Assert.fail(e.toString());
+        }
+        long initialSize = heap.size();
+        MemorySegment segment = heap.allocateSegment(initialSize, false, ResourceScope.globalScope());
+        heap.flush(segment);
+        Assert.assertTrue(heap.size() > initialSize);
+        heap.freeSegment(segment.address(), false);
+        TestVars.cleanUp(heapPathString);
+    }
+
     @Test
     public void testCreatePersistentHeapGrowableWithLimit() {
         if (TestVars.ISDAX) throw new SkipException("Test not valid in DAX mode");
@@ -287,6 +308,40 @@ public class PersistentHeapTests {
         Assert.assertEquals(newSegment.byteSize(), rootSegment.byteSize());
     }
 
+    @Test
+    public void rootTestSetTwice() {
+        heap = TestVars.createLLPersistentHeap();
+        heap.setRoot(heap.allocateSegment(1024, false, ResourceScope.newConfinedScope()));
+        heap.transaction(() -> {
+            heap.addRootToTransaction();
+            heap.setRoot(heap.allocateSegment(64, true, ResourceScope.newConfinedScope()));
+            heap.setRoot(heap.allocateSegment(128, true, ResourceScope.newConfinedScope()));
+            Assert.assertEquals(heap.getRoot(ResourceScope.globalScope()).byteSize(), 128L);
+        });
+        Assert.assertEquals(heap.getRoot(ResourceScope.globalScope()).byteSize(), 128L);
+        heap.setRoot(null);
+        Assert.assertTrue(heap.getRoot(ResourceScope.globalScope()) == null);
+    }
+
+    @Test
+    public void rootTestAborted() {
+        heap = TestVars.createLLPersistentHeap();
+        MemorySegment rootSegment = heap.allocateSegment(1024, false, ResourceScope.newConfinedScope());
+        heap.setRoot(rootSegment);
+        Assert.assertEquals(heap.getRoot(ResourceScope.globalScope()).byteSize(), 1024L);
+        try {
+            heap.transaction(() -> {
+                heap.addRootToTransaction();
+                heap.setRoot(heap.allocateSegment(64, true, ResourceScope.newConfinedScope()));
+                Assert.assertEquals(heap.getRoot(ResourceScope.globalScope()).byteSize(), 64L);
+                throw new IllegalStateException();
+            });
+            Assert.fail("IllegalStateException was not thrown");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(heap.getRoot(ResourceScope.globalScope()).byteSize(), 1024L);
+        }
+    }
+
     @Test
     public void clearRootTest() {
         heap = TestVars.createLLPersistentHeap();
@@ -730,4 +785,60 @@ public class PersistentHeapTests {
             Assert.assertTrue(true);
         }
 	}
+
+    @Test
+	public void testArenas() throws InterruptedException {
+		heap = TestVars.createLLPersistentHeap();
+        Assert.assertEquals(heap.getArenaCount(), 0);
+        heap.useArenas(2);
+        Assert.assertEquals(heap.getArenaCount(), 2);
+        int[] ids = new int[2];
+        int[] idsAfterAllocation = new int[2];
+        Throwable[] failures = new Throwable[2];
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    ids[index] = heap.getArenaId();
+                    MemorySegment segment = heap.allocateSegment(64, false, ResourceScope.globalScope());
+                    idsAfterAllocation[index] = heap.getArenaId();
+                    heap.freeSegment(segment.address(), false);
+                }
+                catch (Throwable t) {
+                    failures[index] = t;
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) thread.join();
+        for (int i = 0; i < threads.length; i++) {
+            Assert.assertNull(failures[i]);
+            Assert.assertEquals(idsAfterAllocation[i], ids[i]);
+        }
+        Assert.assertNotEquals(ids[0], ids[1]);
+	}
+
+    @Test
+	public void testArenasReused() {
+		heap = TestVars.createLLPersistentHeap();
+        heap.useArenas(1);
+        int first = heap.getArenaId();
+        heap.useArenas(3);
+        Assert.assertEquals(heap.getArenaCount(), 3);
+        heap.useArenas(1);
+        Assert.assertEquals(heap.getArenaCount(), 1);
+        Assert.assertEquals(heap.getArenaId(), first);
+	}
+
+    @Test
+	public void testArenasInvalidCount() {
+		heap = TestVars.createLLPersistentHeap();
+        try {
+            heap.useArenas(0);
+            Assert.fail("IllegalArgumentException wasn't thrown");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(true);
+        }
+	}
 }
@@ -102,6 +102,19 @@ public class TestVars {
         return heap;
 	}
 
+    // buffered transactional heaps
+	public static Heap createBufferedHeap() {
+        Heap heap = null;
+        try {
+            if (ISDAX) return Heap.create(Heap.Kind.BUFFERED, Path.of(HEAP_USER_PATH));
+            Path path = Path.of(HEAP_USER_PATH + HEAP_NAME);
+            heap = Heap.create(Heap.Kind.BUFFERED, path, HEAP_SIZE);
+        } catch (IOException e) {
+            Assert.fail();
+        }
+        return heap;
+	}
+
     // durable heaps
     public static Heap createDurableHeap() {
         return createDurableHeap(HEAP_SIZE);
@@ -119,6 +132,14 @@ public class TestVars {
         return heap;
 	}
 
+    // persistent heaps of the given kind
+	public static Heap createHeap(Heap.Kind kind) {
+        if (kind == Heap.Kind.DURABLE) return createDurableHeap();
+        if (kind == Heap.Kind.TRANSACTIONAL) return createTransactionalHeap();
+        if (kind == Heap.Kind.BUFFERED) return createBufferedHeap();
+        return createVolatileHeap();
+	}
+
     // HL volatile heap
 	public static Heap createVolatileHeap() {
 		//if (ISDAX) return TransactionalHeap.createHeap(HEAP_USER_PATH);		
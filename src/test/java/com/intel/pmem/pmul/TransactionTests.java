@@ -475,4 +475,58 @@ public class TransactionTests {
             assert(segment.get(JAVA_LONG, 16) == 0);
         }
 	}
+
+	@Test
+	public void testAdjacentRangesAbort() {
+		heap = TestVars.createLLPersistentHeap();
+		MemorySegment segment = heap.allocateSegment(256, true, ResourceScope.newConfinedScope());
+        for (int i = 0; i < 32; i++) segment.setAtIndex(JAVA_LONG, i, i);
+        heap.flush(segment);
+        try {
+            heap.transaction(() -> {
+                for (int i = 0; i < 32; i++) {
+                    heap.addToTransaction(segment, i * 8, 8);
+                    segment.setAtIndex(JAVA_LONG, i, -1L);
+                }
+                heap.addToTransaction(segment, 60, 100);
+                heap.addToTransaction(segment, 0, 256);
+                throw new IllegalStateException();
+            });
+		    Assert.fail("Exception not thrown");
+        } 
+        catch (IllegalStateException e) {
+            for (int i = 0; i < 32; i++) Assert.assertEquals(segment.getAtIndex(JAVA_LONG, i), (long)i);
+        }
+	}
+
+	@Test
+	public void testAbortKeepsNeighboringWrites() throws InterruptedException {
+		heap = TestVars.createLLPersistentHeap();
+		MemorySegment segment = heap.allocateSegment(64, true, ResourceScope.globalScope());
+        segment.set(JAVA_LONG, 0, 1L);
+        heap.flush(segment);
+        try {
+            heap.transaction(() -> {
+                heap.addToTransaction(segment, 0, 8);
+                segment.set(JAVA_LONG, 0, -1L);
+                Thread neighbor = new Thread(() -> {
+                    segment.set(JAVA_LONG, 8, 42L);
+                    heap.flush(segment, 8, 8);
+                });
+                neighbor.start();
+                try {
+                    neighbor.join();
+                }
+                catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                throw new IllegalStateException();
+            });
+		    Assert.fail("Exception not thrown");
+        }
+        catch (IllegalStateException e) {
+            Assert.assertEquals(segment.get(JAVA_LONG, 0), 1L);
+            Assert.assertEquals(segment.get(JAVA_LONG, 8), 42L);
+        }
+	}
 }
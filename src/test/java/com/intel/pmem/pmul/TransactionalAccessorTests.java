@@ -1897,4 +1897,98 @@ public class TransactionalAccessorTests {
         Assert.assertEquals(referenceL3.getReference(copy, 3, 3, 3), allocation.address());
         copy.free();
     }
+
+    @Test
+    public void testAccessorCanonicalized() {
+        Assert.assertSame(Accessor.of(level1, sequenceElement(), groupElement("bytes")), bytesL1);
+        Assert.assertSame(Accessor.of(MemoryLayout.sequenceLayout(4, typesLayout), sequenceElement(), groupElement("bytes")), bytesL1);
+        Assert.assertNotSame(Accessor.of(level1, sequenceElement(), groupElement("shorts")), bytesL1);
+        Assert.assertNotSame(Accessor.of(level1, sequenceElement(1), groupElement("bytes")), bytesL1);
+        Assert.assertNotSame(Accessor.of(level1, sequenceElement(1), groupElement("bytes")), Accessor.of(level1, sequenceElement(2), groupElement("bytes")));
+        Assert.assertNotSame(Accessor.of(level1, sequenceElement(1, 2), groupElement("bytes")), bytesL1);
+    }
+
+    @Test
+    public void testTypedGetters() {
+        intL0.set(l0Slice, 17);
+        intL1.set(l1Slice, 3, 42);
+        longL2.set(l2Slice, 1, 2, 1L << 40);
+        doubleL1.set(l1Slice, 2, 2.5);
+        charL2.set(l2Slice, 3, 0, 'z');
+        boolL1.set(l1Slice, 1, true);
+        addressL0.set(l0Slice, MemoryAddress.ofLong(64));
+        Assert.assertEquals(intL0.getInt(l0Slice), 17);
+        Assert.assertEquals(intL1.getInt(l1Slice, 3), 42);
+        Assert.assertEquals(intL1.getLong(l1Slice, 3), 42L);
+        Assert.assertEquals(longL2.getLong(l2Slice, 1, 2), 1L << 40);
+        Assert.assertEquals(doubleL1.getDouble(l1Slice, 2), 2.5);
+        Assert.assertEquals(charL2.getChar(l2Slice, 3, 0), 'z');
+        Assert.assertTrue(boolL1.getBoolean(l1Slice, 1));
+        Assert.assertEquals(addressL0.getAddress(l0Slice), MemoryAddress.ofLong(64));
+        try {
+            longL0.getInt(l0Slice);
+            Assert.fail("WrongMethodTypeException was not thrown");
+        } catch (WrongMethodTypeException e) {
+            Assert.assertTrue(true);
+        }
+    }
+
+    @Test
+    public void testRange() {
+        Accessor ints = Accessor.of(MemoryLayout.sequenceLayout(16, JAVA_INT), sequenceElement());
+        int[] values = new int[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+        ints.setRange(l1Slice, 2, values);
+        int[] result = new int[values.length];
+        ints.getRange(l1Slice, 2, result);
+        Assert.assertEquals(result, values);
+        Assert.assertEquals(ints.getInt(l1Slice, 0), 0);
+        Assert.assertEquals(ints.getInt(l1Slice, 13), 11);
+        intL1.setRange(l1Slice, 1, new int[] {7, 8, 9});
+        Assert.assertEquals(intL1.getInt(l1Slice, 0), 0);
+        Assert.assertEquals(intL1.getInt(l1Slice, 3), 9);
+        MemorySegment longs = MemorySegment.allocateNative(2 * JAVA_LONG.byteSize(), ResourceScope.newImplicitScope());
+        longs.setAtIndex(JAVA_LONG, 0, -1L);
+        longs.setAtIndex(JAVA_LONG, 1, 1L << 40);
+        longL1.setRange(l1Slice, 2, longs);
+        Assert.assertEquals(longL1.getLong(l1Slice, 3), 1L << 40);
+        MemorySegment copy = MemorySegment.allocateNative(2 * JAVA_LONG.byteSize(), ResourceScope.newImplicitScope());
+        longL1.getRange(l1Slice, 2, copy);
+        Assert.assertEquals(copy.mismatch(longs), -1L);
+        try {
+            intL1.setRange(l1Slice, 2, new int[] {1, 2, 3});
+            Assert.fail("IndexOutOfBoundsException was not thrown");
+        } catch (IndexOutOfBoundsException e) {
+            Assert.assertEquals(intL1.getInt(l1Slice, 2), 8);
+        }
+        try {
+            intL1.setRange(l1Slice, 0, new long[] {1});
+            Assert.fail("WrongMethodTypeException was not thrown");
+        } catch (WrongMethodTypeException e) {
+            Assert.assertTrue(true);
+        }
+    }
+
+    @Test
+    public void testAtomicInTransaction() {
+        Accessor longs = Accessor.of(MemoryLayout.sequenceLayout(4, JAVA_LONG), sequenceElement());
+        longs.set(l1Slice, 2, 5L);
+        try {
+            Accessor.execute(heap, () -> {
+                longs.set(l1Slice, 1, 7L);
+                longs.compareAndSet(l1Slice, 2, 5L, 6L);
+            });
+            Assert.fail("IllegalStateException was not thrown");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(longs.getLong(l1Slice, 1), 0L);
+            Assert.assertEquals(longs.getLong(l1Slice, 2), 5L);
+        }
+        // allocations made within the transaction are not visible to other threads until it commits
+        Allocation fresh = Accessor.execute(heap, () -> {
+            return heap.allocate(l1Slice.byteSize(), ResourceScope.globalScope(), (Allocation a) -> {
+                Assert.assertTrue(longs.compareAndSet(a, 2, 0L, 6L));
+            });
+        });
+        Assert.assertEquals(longs.getLong(fresh, 2), 6L);
+        fresh.free();
+    }
 }
@@ -13,6 +13,10 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import jdk.incubator.foreign.MemoryLayout;
 import jdk.incubator.foreign.ResourceScope;
 import jdk.incubator.foreign.SequenceLayout;
@@ -285,4 +289,348 @@ public class TransactionalHeapTests {
         heap = TestVars.createTransactionalHeap();
         Assert.assertEquals(Heap.Kind.TRANSACTIONAL, heap.getKind());
     }
+
+    @Test
+    public void testAllocationBuffersInTransaction() {
+        heap = TestVars.createTransactionalHeap();
+        heap.useAllocationBuffers(true);
+        heap.allocate(48, ResourceScope.globalScope());
+        try {
+            Accessor.execute(heap, () -> {
+                heap.allocate(48, ResourceScope.globalScope());
+                throw new IllegalStateException();
+            });
+            Assert.fail("IllegalStateException was not thrown");
+        }
+        catch (IllegalStateException e) {
+            Assert.assertTrue(true);
+        }
+        Accessor.execute(heap, () -> {
+            heap.allocate(48, ResourceScope.globalScope());
+        });
+        PersistentHeap lowLevelHeap = (PersistentHeap)((HighLevelHeap)heap).lowLevelHeap;
+        Assert.assertEquals(new AllocationBuffers(lowLevelHeap).allocatedSlots(), 1L);
+    }
+
+    @Test
+    public void testAllocationBuffersDoubleFree() {
+        heap = TestVars.createTransactionalHeap();
+        heap.useAllocationBuffers(true);
+        Allocation allocation = heap.allocate(48, ResourceScope.globalScope());
+        Assert.assertThrows(HeapException.class, () -> Accessor.execute(heap, () -> {
+            allocation.free();
+            allocation.free();
+        }));
+        allocation.free();
+        Assert.assertThrows(HeapException.class, () -> allocation.free());
+    }
+
+    @Test
+    public void testAllocateAll() {
+        heap = TestVars.createTransactionalHeap();
+        long[] sizes = new long[]{8, 64, 1024, 24, 4096};
+        Allocation[] allocations = heap.allocateAll(sizes, ResourceScope.globalScope());
+        Assert.assertEquals(allocations.length, sizes.length);
+        for (int i = 0; i < sizes.length; i++) {
+            Assert.assertEquals(allocations[i].byteSize(), sizes[i]);
+            Assert.assertEquals(allocations[i].get(ValueLayout.JAVA_LONG, 0), 0L);
+            allocations[i].set(ValueLayout.JAVA_LONG, 0, (long)i);
+        }
+        for (int i = 0; i < sizes.length; i++) {
+            Assert.assertEquals(allocations[i].get(ValueLayout.JAVA_LONG, 0), (long)i);
+            allocations[i].free();
+        }
+    }
+
+    @Test
+    public void testAllocateAllTooLarge() {
+        heap = TestVars.createTransactionalHeap();
+        long[] sizes = new long[]{64, TestVars.HEAP_SIZE * 2};
+        try {
+            heap.allocateAll(sizes, ResourceScope.globalScope());
+            Assert.fail("OutOfMemoryError was not thrown");
+        }
+        catch (OutOfMemoryError e) {
+            Assert.assertTrue(true);
+        }
+    }
+
+    @Test
+    public void testAllocateReserved() {
+        heap = TestVars.createTransactionalHeap();
+        Allocation parent = heap.allocate(16, ResourceScope.globalScope());
+        Allocation child = heap.allocateReserved(64, ResourceScope.globalScope(), (Allocation a) -> {
+            a.set(ValueLayout.JAVA_LONG, 0, 42L);
+        }, parent, 8);
+        Assert.assertEquals(child.get(ValueLayout.JAVA_LONG, 0), 42L);
+        Assert.assertEquals(parent.getReference(8), child.address());
+        Assert.assertEquals(parent.get(ValueLayout.JAVA_LONG, 0), 0L);
+        child.free();
+        parent.free();
+    }
+
+    @Test
+    public void testAllocateReservedInTransaction() {
+        heap = TestVars.createTransactionalHeap();
+        Allocation parent = heap.allocate(16, ResourceScope.globalScope());
+        Allocation[] child = new Allocation[1];
+        Accessor.execute(heap, () -> {
+            child[0] = heap.allocateReserved(64, ResourceScope.globalScope(), (Allocation a) -> {
+                a.set(ValueLayout.JAVA_LONG, 0, 42L);
+            }, parent, 8);
+            Assert.assertEquals(parent.getReference(8), child[0].address());
+        });
+        Assert.assertEquals(parent.getReference(8), child[0].address());
+        Assert.assertEquals(child[0].get(ValueLayout.JAVA_LONG, 0), 42L);
+        try {
+            Accessor.execute(heap, () -> {
+                heap.allocateReserved(64, ResourceScope.globalScope(), (Allocation a) -> {}, parent, 0);
+                Assert.assertNotEquals(parent.get(ValueLayout.JAVA_LONG, 0), 0L);
+                throw new IllegalStateException();
+            });
+            Assert.fail("IllegalStateException was not thrown");
+        }
+        catch (IllegalStateException e) {
+            Assert.assertEquals(parent.get(ValueLayout.JAVA_LONG, 0), 0L);
+        }
+        child[0].free();
+        parent.free();
+    }
+
+    @Test
+    public void testAllocateReservedFailedInitializer() {
+        heap = TestVars.createTransactionalHeap();
+        Allocation parent = heap.allocate(16, ResourceScope.globalScope());
+        try {
+            heap.allocateReserved(64, ResourceScope.globalScope(), (Allocation a) -> {
+                throw new IllegalStateException();
+            }, parent, 0);
+            Assert.fail("IllegalStateException was not thrown");
+        }
+        catch (IllegalStateException e) {
+            Assert.assertEquals(parent.get(ValueLayout.JAVA_LONG, 0), 0L);
+        }
+        parent.free();
+    }
+
+    @Test
+    public void testAllocationClass() {
+        heap = TestVars.createTransactionalHeap();
+        MemoryLayout node = MemoryLayout.structLayout(ValueLayout.JAVA_LONG.withName("value"), ValueLayout.JAVA_LONG.withName("next"), ValueLayout.JAVA_LONG.withName("prev"));
+        heap.registerAllocationClass(node);
+        heap.registerAllocationClass(node);
+        Allocation first = heap.allocate(node, ResourceScope.globalScope());
+        Allocation second = heap.allocate(node, ResourceScope.globalScope());
+        Assert.assertEquals(first.byteSize(), node.byteSize());
+        Assert.assertEquals(first.get(ValueLayout.JAVA_LONG, 16), 0L);
+        first.set(ValueLayout.JAVA_LONG, 16, 7L);
+        second.set(ValueLayout.JAVA_LONG, 0, 9L);
+        Assert.assertEquals(first.get(ValueLayout.JAVA_LONG, 16), 7L);
+        Assert.assertEquals(second.get(ValueLayout.JAVA_LONG, 0), 9L);
+        first.free();
+        second.free();
+        Allocation[] batch = heap.allocateAll(new long[]{node.byteSize(), 64, node.byteSize()}, ResourceScope.globalScope());
+        Assert.assertEquals(batch[2].byteSize(), node.byteSize());
+        Assert.assertEquals(batch[2].get(ValueLayout.JAVA_LONG, 16), 0L);
+        for (Allocation allocation : batch) allocation.free();
+    }
+
+    @Test
+    public void testExecuteAsync() {
+        heap = TestVars.createTransactionalHeap();
+        Allocation allocation = heap.allocate(8 * 64, ResourceScope.globalScope());
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[64];
+        for (int i = 0; i < futures.length; i++) {
+            final int index = i;
+            futures[i] = Accessor.executeAsync(heap, () -> {
+                allocation.setAtIndex(ValueLayout.JAVA_LONG, index, (long)index);
+            });
+        }
+        CompletableFuture.allOf(futures).join();
+        for (int i = 0; i < futures.length; i++) Assert.assertEquals(allocation.getAtIndex(ValueLayout.JAVA_LONG, i), (long)i);
+        Assert.assertEquals((long)Accessor.executeAsync(heap, () -> allocation.getAtIndex(ValueLayout.JAVA_LONG, 3)).join(), 3L);
+    }
+
+    @Test
+    public void testExecuteAsyncFailure() {
+        heap = TestVars.createTransactionalHeap();
+        Allocation allocation = heap.allocate(16, ResourceScope.globalScope());
+        CompletableFuture<Void> first = Accessor.executeAsync(heap, () -> allocation.set(ValueLayout.JAVA_LONG, 0, 1L));
+        CompletableFuture<Void> failing = Accessor.executeAsync(heap, () -> {
+            allocation.set(ValueLayout.JAVA_LONG, 8, 2L);
+            throw new IllegalStateException();
+        });
+        CompletableFuture<Void> last = Accessor.executeAsync(heap, () -> allocation.set(ValueLayout.JAVA_LONG, 8, 3L));
+        first.join();
+        last.join();
+        try {
+            failing.join();
+            Assert.fail("CompletionException was not thrown");
+        }
+        catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertEquals(allocation.get(ValueLayout.JAVA_LONG, 0), 1L);
+        Assert.assertEquals(allocation.get(ValueLayout.JAVA_LONG, 8), 3L);
+    }
+
+    @Test
+    public void testExecuteAsyncDuringClose() throws Exception {
+        heap = TestVars.createTransactionalHeap();
+        Accessor.executeAsync(heap, () -> {}).join();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[1000];
+        Thread submitter = new Thread(() -> {
+            for (int i = 0; i < futures.length; i++) futures[i] = Accessor.executeAsync(heap, () -> {});
+        });
+        submitter.start();
+        ((HighLevelHeap)heap).close();
+        submitter.join();
+        heap = null;
+        for (CompletableFuture<?> future : futures) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+
+    @Test
+    public void testBufferedReadYourWrites() {
+        heap = TestVars.createBufferedHeap();
+        Assert.assertEquals(heap.getKind(), Heap.Kind.BUFFERED);
+        Allocation allocation = heap.allocate(64, ResourceScope.globalScope());
+        Accessor.execute(heap, () -> {
+            allocation.set(ValueLayout.JAVA_INT, 4, 7);
+            allocation.set(ValueLayout.JAVA_BYTE, 9, (byte)3);
+            allocation.set(ValueLayout.JAVA_LONG, 16, 42L);
+            Assert.assertEquals(allocation.get(ValueLayout.JAVA_INT, 4), 7);
+            Assert.assertEquals(allocation.get(ValueLayout.JAVA_INT, 0), 0);
+            Assert.assertEquals(allocation.get(ValueLayout.JAVA_BYTE, 9), (byte)3);
+            Assert.assertEquals(allocation.get(ValueLayout.JAVA_LONG, 16), 42L);
+            Assert.assertEquals(allocation.toArray(ValueLayout.JAVA_LONG)[2], 42L);
+        });
+        Assert.assertEquals(allocation.get(ValueLayout.JAVA_INT, 4), 7);
+        Assert.assertEquals(allocation.get(ValueLayout.JAVA_BYTE, 9), (byte)3);
+        Assert.assertEquals(allocation.get(ValueLayout.JAVA_LONG, 16), 42L);
+    }
+
+    @Test
+    public void testBufferedAbort() {
+        heap = TestVars.createBufferedHeap();
+        Allocation allocation = heap.allocate(16, ResourceScope.globalScope());
+        allocation.set(ValueLayout.JAVA_LONG, 0, 1L);
+        try {
+            Accessor.execute(heap, () -> {
+                allocation.set(ValueLayout.JAVA_LONG, 0, 2L);
+                allocation.set(ValueLayout.JAVA_LONG, 8, 3L);
+                throw new IllegalStateException();
+            });
+            Assert.fail("IllegalStateException was not thrown");
+        }
+        catch (IllegalStateException e) {
+            Assert.assertEquals(allocation.get(ValueLayout.JAVA_LONG, 0), 1L);
+            Assert.assertEquals(allocation.get(ValueLayout.JAVA_LONG, 8), 0L);
+        }
+    }
+
+    @Test
+    public void testBufferedAtomicOutsideTransaction() {
+        heap = TestVars.createBufferedHeap();
+        Allocation allocation = heap.allocate(16, ResourceScope.globalScope());
+        Accessor longs = Accessor.of(MemoryLayout.sequenceLayout(2, ValueLayout.JAVA_LONG), sequenceElement());
+        try {
+            Accessor.execute(heap, () -> {
+                allocation.set(ValueLayout.JAVA_LONG, 8, 2L);
+                longs.compareAndSet(allocation, 1, 2L, 3L);
+            });
+            Assert.fail("IllegalStateException was not thrown");
+        }
+        catch (IllegalStateException e) {
+            Assert.assertEquals(allocation.get(ValueLayout.JAVA_LONG, 8), 0L);
+        }
+        Assert.assertTrue(longs.compareAndSet(allocation, 1, 0L, 3L));
+        Assert.assertEquals(allocation.get(ValueLayout.JAVA_LONG, 8), 3L);
+    }
+
+    @Test
+    public void testBufferedWriteKeepsNeighboringBytes() {
+        heap = TestVars.createBufferedHeap();
+        Allocation allocation = heap.allocate(64, ResourceScope.globalScope());
+        Accessor.execute(heap, () -> {
+            allocation.set(ValueLayout.JAVA_BYTE, 0, (byte)1);
+            allocation.set(ValueLayout.JAVA_SHORT, 4, (short)2);
+            Assert.assertEquals(allocation.get(ValueLayout.JAVA_BYTE, 0), (byte)1);
+            Assert.assertEquals(allocation.toArray(ValueLayout.JAVA_BYTE)[4], (byte)2);
+            // neither the writes nor the reads above reach persistent memory before commit
+            CompletableFuture.runAsync(() -> {
+                Assert.assertEquals(allocation.get(ValueLayout.JAVA_BYTE, 0), (byte)0);
+                Accessor.execute(heap, () -> {
+                    allocation.set(ValueLayout.JAVA_BYTE, 1, (byte)3);
+                    allocation.set(ValueLayout.JAVA_BYTE, 7, (byte)4);
+                });
+            }).join();
+        });
+        Assert.assertEquals(allocation.get(ValueLayout.JAVA_BYTE, 0), (byte)1);
+        Assert.assertEquals(allocation.get(ValueLayout.JAVA_BYTE, 1), (byte)3);
+        Assert.assertEquals(allocation.get(ValueLayout.JAVA_SHORT, 4), (short)2);
+        Assert.assertEquals(allocation.get(ValueLayout.JAVA_BYTE, 7), (byte)4);
+    }
+
+    @Test
+    public void testBufferedReopen() throws IOException {
+        if (TestVars.ISDAX) throw new SkipException("Test not valid in DAX mode");
+        heap = TestVars.createBufferedHeap();
+        Allocation allocation = heap.allocate(32, ResourceScope.globalScope());
+        heap.setRoot(allocation);
+        Accessor.execute(heap, () -> {
+            for (long i = 0; i < 4; i++) allocation.setAtIndex(ValueLayout.JAVA_LONG, i, i + 1);
+            Allocation.copy(allocation, 0, allocation, 8, 8);
+        });
+        ((HighLevelHeap)heap).close();
+        heap = Heap.open(Path.of(TestVars.HEAP_USER_PATH + TestVars.HEAP_NAME));
+        Assert.assertEquals(heap.getKind(), Heap.Kind.BUFFERED);
+        Allocation root = heap.getRoot(ResourceScope.globalScope());
+        Assert.assertEquals(root.toArray(ValueLayout.JAVA_LONG), new long[]{1L, 1L, 3L, 4L});
+    }
+
+    @Test
+    public void testFailedWriteAborts() {
+        heap = TestVars.createTransactionalHeap();
+        Allocation allocation = heap.allocate(16, ResourceScope.globalScope());
+        allocation.set(ValueLayout.JAVA_LONG, 0, 1L);
+        try {
+            Accessor.execute(heap, () -> {
+                allocation.set(ValueLayout.JAVA_LONG, 0, 2L);
+                allocation.set(ValueLayout.JAVA_LONG, 12, 3L);
+            });
+            Assert.fail("IndexOutOfBoundsException was not thrown");
+        }
+        catch (IndexOutOfBoundsException e) {
+            Assert.assertEquals(allocation.get(ValueLayout.JAVA_LONG, 0), 1L);
+        }
+        Assert.assertFalse(Transaction.isActive());
+        allocation.set(ValueLayout.JAVA_LONG, 8, 4L);
+        Assert.assertEquals(allocation.get(ValueLayout.JAVA_LONG, 8), 4L);
+    }
+
+    @Test
+    public void testFailedExecuteEndsInFlightSegment() {
+        heap = TestVars.createTransactionalHeap();
+        Allocation allocation = heap.allocate(16, ResourceScope.globalScope());
+        Assert.assertThrows(IllegalStateException.class, () -> allocation.execute(() -> {
+            throw new IllegalStateException();
+        }));
+        try {
+            Accessor.execute(heap, () -> {
+                allocation.set(ValueLayout.JAVA_LONG, 0, 5L);
+                throw new IllegalStateException();
+            });
+            Assert.fail("IllegalStateException was not thrown");
+        }
+        catch (IllegalStateException e) {
+            Assert.assertEquals(allocation.get(ValueLayout.JAVA_LONG, 0), 0L);
+        }
+    }
 }